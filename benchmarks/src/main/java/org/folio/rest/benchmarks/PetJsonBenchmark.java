@@ -0,0 +1,80 @@
+package org.folio.rest.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.folio.rest.jaxrs.model.Pet;
+import org.folio.rest.jaxrs.model.PetsCollection;
+import org.folio.rest.persist.PostgresClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization cost of a Pet as stored in jsonb and of a PetsCollection page as returned by GET /pets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PetJsonBenchmark {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @Param({"1", "10", "100", "1000"})
+  public int pageSize;
+
+  private Pet pet;
+  private PetsCollection page;
+  private String pageJson;
+
+  @Setup
+  public void setUp() throws Exception {
+    pet = pet(0);
+    List<Pet> pets = new ArrayList<>(pageSize);
+    for (int i = 0; i < pageSize; i++) {
+      pets.add(pet(i));
+    }
+    page = new PetsCollection();
+    page.setPets(pets);
+    page.setTotalRecords(pageSize);
+    pageJson = MAPPER.writeValueAsString(page);
+  }
+
+  @Benchmark
+  public String serializePet() throws Exception {
+    return PostgresClient.pojo2json(pet);
+  }
+
+  @Benchmark
+  public String serializeCollection() throws Exception {
+    return MAPPER.writeValueAsString(page);
+  }
+
+  @Benchmark
+  public PetsCollection deserializeCollection() throws Exception {
+    return MAPPER.readValue(pageJson, PetsCollection.class);
+  }
+
+  private static Pet pet(int i) {
+    Pet pet = new Pet();
+    pet.setId(UUID.randomUUID().toString());
+    pet.setGenus("Genus-" + i);
+    pet.setQuantity(i);
+    pet.setNotes("Arrived with the spring intake, shares an enclosure with its siblings");
+    return pet;
+  }
+}
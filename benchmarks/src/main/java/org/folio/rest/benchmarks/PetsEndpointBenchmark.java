@@ -0,0 +1,207 @@
+package org.folio.rest.benchmarks;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.folio.rest.RestVerticle;
+import org.folio.rest.client.TenantClient;
+import org.folio.rest.persist.PostgresClient;
+import org.folio.rest.tools.utils.NetworkUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end throughput of every PetsImpl endpoint: RestVerticle on embedded Postgres,
+ * called over HTTP the way Okapi would call it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PetsEndpointBenchmark {
+
+  private static final String TENANT = "diku";
+  private static final String PETS_PATH = "/pets";
+  private static final long TIMEOUT_SECONDS = 30;
+
+  @Param({"1000"})
+  public int seedSize;
+
+  private Vertx vertx;
+  private HttpClient client;
+  private int port;
+  private String seedPetId;
+  private String adoptedPetId;
+  private final AtomicLong genusCounter = new AtomicLong();
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    vertx = Vertx.vertx();
+    port = NetworkUtils.nextFreePort();
+    PostgresClient.setIsEmbedded(true);
+    PostgresClient.getInstance(vertx).startEmbeddedPostgres();
+
+    CompletableFuture<Void> deployed = new CompletableFuture<>();
+    DeploymentOptions options = new DeploymentOptions().setConfig(new JsonObject().put("http.port", port));
+    vertx.deployVerticle(RestVerticle.class.getName(), options, res -> {
+      try {
+        new TenantClient("localhost", port, TENANT, TENANT).postTenant(null, res2 -> deployed.complete(null));
+      } catch (Exception e) {
+        deployed.completeExceptionally(e);
+      }
+    });
+    deployed.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+    client = vertx.createHttpClient(new HttpClientOptions()
+      .setDefaultHost("localhost")
+      .setDefaultPort(port)
+      .setKeepAlive(true)
+      .setMaxPoolSize(64));
+
+    JsonArray seed = new JsonArray();
+    for (int i = 0; i < seedSize; i++) {
+      seed.add(new JsonObject().put("genus", "Seed-" + i).put("quantity", i));
+    }
+    call(HttpMethod.POST, PETS_PATH + "/batch", new JsonObject().put("pets", seed).put("totalRecords", seedSize).encode());
+    seedPetId = new JsonObject(call(HttpMethod.POST, PETS_PATH, newPet())).getString("id");
+    String homelessId = new JsonObject(call(HttpMethod.POST, PETS_PATH, newPet())).getString("id");
+    adoptedPetId = new JsonObject(call(HttpMethod.POST, PETS_PATH + "/adopt/" + homelessId, null)).getString("id");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    CompletableFuture<Void> closed = new CompletableFuture<>();
+    vertx.close(res -> closed.complete(null));
+    closed.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    PostgresClient.stopEmbeddedPostgres();
+  }
+
+  @State(Scope.Thread)
+  public static class HomelessPet {
+    String id;
+
+    @Setup(Level.Invocation)
+    public void create(PetsEndpointBenchmark benchmark) throws Exception {
+      id = new JsonObject(benchmark.call(HttpMethod.POST, PETS_PATH, benchmark.newPet())).getString("id");
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class HomelessPets {
+    JsonArray ids;
+
+    @Setup(Level.Invocation)
+    public void create(PetsEndpointBenchmark benchmark) throws Exception {
+      JsonArray pets = new JsonArray();
+      for (int i = 0; i < 100; i++) {
+        pets.add(new JsonObject(benchmark.newPet()));
+      }
+      JsonObject result = new JsonObject(benchmark.call(HttpMethod.POST, PETS_PATH + "/batch",
+        new JsonObject().put("pets", pets).put("totalRecords", 100).encode()));
+      ids = new JsonArray();
+      result.getJsonArray("items").forEach(item -> ids.add(((JsonObject) item).getString("id")));
+    }
+  }
+
+  @Benchmark
+  public String postPets() throws Exception {
+    return call(HttpMethod.POST, PETS_PATH, newPet());
+  }
+
+  @Benchmark
+  public String postPetsBatch() throws Exception {
+    JsonArray pets = new JsonArray();
+    for (int i = 0; i < 100; i++) {
+      pets.add(new JsonObject(newPet()));
+    }
+    return call(HttpMethod.POST, PETS_PATH + "/batch", new JsonObject().put("pets", pets).put("totalRecords", 100).encode());
+  }
+
+  @Benchmark
+  public String getPets() throws Exception {
+    return call(HttpMethod.GET, PETS_PATH + "?limit=10", null);
+  }
+
+  @Benchmark
+  public String searchPets() throws Exception {
+    return call(HttpMethod.GET, PETS_PATH + "?query=genus%3DSeed-42", null);
+  }
+
+  @Benchmark
+  public String getPetsById() throws Exception {
+    return call(HttpMethod.GET, PETS_PATH + "/" + seedPetId, null);
+  }
+
+  @Benchmark
+  public String putPetsById() throws Exception {
+    String pet = new JsonObject().put("id", seedPetId).put("genus", "Seed-put").put("quantity", (int) (genusCounter.get() % 100)).encode();
+    return call(HttpMethod.PUT, PETS_PATH + "/" + seedPetId, pet);
+  }
+
+  @Benchmark
+  public String deletePetsById(HomelessPet pet) throws Exception {
+    return call(HttpMethod.DELETE, PETS_PATH + "/" + pet.id, null);
+  }
+
+  @Benchmark
+  public String postPetsAdoptById(HomelessPet pet) throws Exception {
+    return call(HttpMethod.POST, PETS_PATH + "/adopt/" + pet.id, null);
+  }
+
+  @Benchmark
+  public String postPetsAdopt(HomelessPets pets) throws Exception {
+    return call(HttpMethod.POST, PETS_PATH + "/adopt", new JsonObject().put("ids", pets.ids).encode());
+  }
+
+  @Benchmark
+  public String getPetsAdoptById() throws Exception {
+    return call(HttpMethod.GET, PETS_PATH + "/adopt/" + adoptedPetId, null);
+  }
+
+  String newPet() {
+    return new JsonObject().put("genus", "Bench-" + genusCounter.incrementAndGet()).put("quantity", 1).encode();
+  }
+
+  String call(HttpMethod method, String uri, String body) throws Exception {
+    CompletableFuture<String> response = new CompletableFuture<>();
+    HttpClientRequest request = client.request(method, uri, res -> res.bodyHandler(buffer -> {
+      if (res.statusCode() >= 300) {
+        response.completeExceptionally(new IllegalStateException(method + " " + uri + " returned " + res.statusCode() + ": " + buffer));
+      } else {
+        response.complete(buffer.toString());
+      }
+    }));
+    request.exceptionHandler(response::completeExceptionally);
+    request.putHeader(RestVerticle.OKAPI_HEADER_TENANT, TENANT);
+    request.putHeader("Accept", "application/json, text/plain");
+    if (body == null) {
+      request.end();
+    } else {
+      request.putHeader("Content-Type", "application/json");
+      request.end(body);
+    }
+    return response.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,52 @@
+package org.folio.rest.benchmarks;
+
+import org.folio.rest.utils.PgQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.z3950.zing.cql.cql2pgjson.CQL2PgJSON;
+import org.z3950.zing.cql.cql2pgjson.SqlSelect;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning the CQL of GET /pets into SQL: through the cached PgQueryBuilder
+ * and through a fresh CQL2PgJSON translation as PgQueryBuilder did before the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PgQueryBuilderBenchmark {
+
+  private static final String[] ALL_FIELDS = {"*"};
+  private static final String TABLE = "homeless_pets";
+  private static final String TENANT = "diku";
+
+  @Param({
+    "cql.allRecords=1",
+    "genus=felis",
+    "genus=felis and quantity>5",
+    "notes=\"*kitten*\" sortBy genus/sort.descending"
+  })
+  public String query;
+
+  @Benchmark
+  public PgQuery buildCached() throws Exception {
+    return new PgQuery.PgQueryBuilder(ALL_FIELDS, TABLE).tenant(TENANT).query(query).offset(0).limit(10).build();
+  }
+
+  @Benchmark
+  public SqlSelect translateUncached() throws Exception {
+    return new CQL2PgJSON(TABLE + ".jsonb").toSql(query);
+  }
+}
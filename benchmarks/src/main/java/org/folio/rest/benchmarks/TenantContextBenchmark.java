@@ -0,0 +1,64 @@
+package org.folio.rest.benchmarks;
+
+import io.vertx.core.Vertx;
+import org.folio.rest.impl.PetsImpl;
+import org.folio.rest.persist.PostgresClient;
+import org.folio.rest.utils.PetInvalidationBus;
+import org.folio.rest.utils.TenantContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request setup of PetsImpl: its constructor and the GET /pets query built from the TenantContext of
+ * the tenant. Run with {@code -prof gc} and read gc.alloc.rate.norm for the bytes allocated per request;
+ * compare the results of releases to see how the setup changes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TenantContextBenchmark {
+
+  private static final String[] ALL_FIELDS = {"*"};
+  private static final String TABLE = "homeless_pets";
+  private static final String TENANT = "diku";
+  private static final String QUERY = "genus=felis";
+
+  private Vertx vertx;
+
+  @Setup
+  public void setUp() throws Exception {
+    vertx = Vertx.vertx();
+    PostgresClient.setIsEmbedded(true);
+    PostgresClient.getInstance(vertx).startEmbeddedPostgres();
+    PetInvalidationBus.getInstance().start(vertx);
+  }
+
+  @TearDown
+  public void tearDown() {
+    PetInvalidationBus.getInstance().stop();
+    TenantContext.closeAll();
+    vertx.close();
+    PostgresClient.stopEmbeddedPostgres();
+  }
+
+  @Benchmark
+  public void perRequestSetup(Blackhole blackhole) throws Exception {
+    blackhole.consume(new PetsImpl(vertx, TENANT));
+    blackhole.consume(TenantContext.forTenant(vertx, TENANT).query(ALL_FIELDS, TABLE).query(QUERY).limit(10).build());
+  }
+}
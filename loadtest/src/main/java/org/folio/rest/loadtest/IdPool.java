@@ -0,0 +1,48 @@
+package org.folio.rest.loadtest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Ids of the homeless pets the generator may address. Reads and updates pick a random id; deletes and
+ * adoptions take one out so that no other request deletes or adopts the same pet.
+ */
+public class IdPool {
+
+  private final List<String> ids;
+
+  public IdPool(Collection<String> ids) {
+    this.ids = new ArrayList<>(ids);
+  }
+
+  public synchronized void add(String id) {
+    ids.add(id);
+  }
+
+  /**
+   * @return - a random id, null when the pool is empty
+   */
+  public synchronized String pick() {
+    return ids.isEmpty() ? null : ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+  }
+
+  /**
+   * @return - a random id removed from the pool, null when the pool is empty
+   */
+  public synchronized String take() {
+    if (ids.isEmpty()) {
+      return null;
+    }
+    int index = ThreadLocalRandom.current().nextInt(ids.size());
+    String id = ids.get(index);
+    ids.set(index, ids.get(ids.size() - 1));
+    ids.remove(ids.size() - 1);
+    return id;
+  }
+
+  public synchronized int size() {
+    return ids.size();
+  }
+}
@@ -0,0 +1,331 @@
+package org.folio.rest.loadtest;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.sql.ResultSet;
+import org.HdrHistogram.Histogram;
+import org.folio.rest.RestVerticle;
+import org.folio.rest.client.TenantClient;
+import org.folio.rest.loadtest.TrafficMix.Operation;
+import org.folio.rest.persist.PostgresClient;
+import org.folio.rest.tools.utils.NetworkUtils;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a weighted mix of pet requests at a fixed rate against RestVerticle on embedded Postgres,
+ * booted the way PetsImplTest does, and prints throughput and latency percentiles per operation.
+ * The generator is open-loop: requests are sent when the schedule says so, whether or not earlier
+ * ones have been answered, up to {@code loadtest.maxInFlight}.
+ *
+ * <p>Settings are system properties: {@code loadtest.seedSize}, {@code loadtest.rate} (requests per second),
+ * {@code loadtest.warmupSeconds}, {@code loadtest.durationSeconds}, {@code loadtest.mix},
+ * {@code loadtest.maxInFlight} and {@code loadtest.idPoolSize}.
+ */
+public class LoadTest {
+
+  private static final String TENANT = "diku";
+  private static final String PETS_PATH = "/pets";
+  private static final String HOMELESS_PETS_TABLE_NAME = "homeless_pets";
+  private static final long TIMEOUT_SECONDS = 30;
+  private static final long SEED_TIMEOUT_MINUTES = 30;
+  private static final int SEED_CHUNK_SIZE = 50000;
+  private static final List<String> ADOPTION_STAGES = Arrays.asList(
+    "movePet", "startTx", "findPet", "vacateShelterPlace", "adoptPet", "notifyAdoption", "endTx");
+
+  private final int seedSize = Integer.getInteger("loadtest.seedSize", 100000);
+  private final int rate = Integer.getInteger("loadtest.rate", 200);
+  private final long warmupSeconds = Long.getLong("loadtest.warmupSeconds", 10L);
+  private final long durationSeconds = Long.getLong("loadtest.durationSeconds", 60L);
+  private final int maxInFlight = Integer.getInteger("loadtest.maxInFlight", 256);
+  private final int idPoolSize = Integer.getInteger("loadtest.idPoolSize", 100000);
+  private final TrafficMix mix = new TrafficMix(System.getProperty("loadtest.mix", "create=5,search=30,get=45,put=10,delete=5,adopt=5"));
+
+  private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicLong genusCounter = new AtomicLong();
+  private Vertx vertx;
+  private HttpClient client;
+  private PostgresClient pgClient;
+  private int port;
+  private IdPool idPool;
+  // touched by the scheduler timer only, which always runs on the same event loop
+  private long nextDueNanos;
+  private boolean measuring;
+
+  public static void main(String[] args) throws Exception {
+    LoadTest loadTest = new LoadTest();
+    try {
+      loadTest.start();
+      loadTest.seed();
+      loadTest.run();
+      loadTest.report();
+    } finally {
+      loadTest.stop();
+    }
+  }
+
+  private void start() throws Exception {
+    for (Operation operation : Operation.values()) {
+      stats.put(operation, new OperationStats());
+    }
+    vertx = Vertx.vertx();
+    port = NetworkUtils.nextFreePort();
+    PostgresClient.setIsEmbedded(true);
+    PostgresClient.getInstance(vertx).startEmbeddedPostgres();
+
+    CompletableFuture<Void> deployed = new CompletableFuture<>();
+    DeploymentOptions options = new DeploymentOptions().setConfig(new JsonObject().put("http.port", port));
+    vertx.deployVerticle(RestVerticle.class.getName(), options, res -> {
+      try {
+        new TenantClient("localhost", port, TENANT, TENANT).postTenant(null, res2 -> deployed.complete(null));
+      } catch (Exception e) {
+        deployed.completeExceptionally(e);
+      }
+    });
+    deployed.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+    pgClient = PostgresClient.getInstance(vertx, TENANT);
+    client = vertx.createHttpClient(new HttpClientOptions()
+      .setDefaultHost("localhost")
+      .setDefaultPort(port)
+      .setKeepAlive(true)
+      .setMaxPoolSize(maxInFlight));
+  }
+
+  private void stop() throws Exception {
+    if (vertx != null) {
+      CompletableFuture<Void> closed = new CompletableFuture<>();
+      vertx.close(res -> closed.complete(null));
+      closed.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+    PostgresClient.stopEmbeddedPostgres();
+  }
+
+  /**
+   * Inserts the dataset with set-based SQL, which takes seconds for millions of pets where the API
+   * would take minutes, and fills the id pool with ids of seeded pets
+   */
+  private void seed() throws Exception {
+    String schema = PostgresClient.convertToPsqlStandard(TENANT);
+    String table = schema + "." + HOMELESS_PETS_TABLE_NAME;
+    long start = System.nanoTime();
+    for (int from = 1; from <= seedSize; from += SEED_CHUNK_SIZE) {
+      int to = Math.min(from + SEED_CHUNK_SIZE - 1, seedSize);
+      sql("INSERT INTO " + table + " (_id, jsonb)"
+        + " SELECT id, jsonb_build_object('id', id::text, 'genus', 'Seed-' || i, 'quantity', i % 100)"
+        + " FROM (SELECT md5('seed-' || i)::uuid AS id, i FROM generate_series(" + from + ", " + to + ") AS i) AS seed"
+        + " ON CONFLICT DO NOTHING");
+    }
+    // the seed is not traffic, keep it out of the change feed
+    sql("TRUNCATE " + schema + ".pet_changes");
+    sql("ANALYZE " + table);
+
+    List<String> ids = new ArrayList<>();
+    for (JsonArray row : sql("SELECT jsonb->>'id' FROM " + table + " LIMIT " + idPoolSize).getResults()) {
+      ids.add(row.getString(0));
+    }
+    idPool = new IdPool(ids);
+    System.out.printf("Seeded %d pets in %d s, %d ids in the pool%n",
+      seedSize, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), ids.size());
+  }
+
+  private void run() throws Exception {
+    System.out.printf("Sending %d requests/s of %s: %d s warmup, %d s measured%n", rate, mix, warmupSeconds, durationSeconds);
+    long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+    long start = System.nanoTime();
+    long warmupEnd = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+    long end = warmupEnd + TimeUnit.SECONDS.toNanos(durationSeconds);
+    nextDueNanos = start;
+    measuring = warmupSeconds == 0;
+
+    CompletableFuture<Void> finished = new CompletableFuture<>();
+    vertx.setPeriodic(1, timerId -> {
+      long now = System.nanoTime();
+      if (!measuring && now >= warmupEnd) {
+        stats.values().forEach(OperationStats::reset);
+        measuring = true;
+      }
+      while (nextDueNanos <= now && nextDueNanos < end) {
+        send(mix.next(), nextDueNanos);
+        nextDueNanos += intervalNanos;
+      }
+      if (now >= end) {
+        vertx.cancelTimer(timerId);
+        finished.complete(null);
+      }
+    });
+    finished.get(warmupSeconds + durationSeconds + TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+    long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+    while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  private void send(Operation operation, long dueNanos) {
+    OperationStats operationStats = stats.get(operation);
+    if (inFlight.get() >= maxInFlight) {
+      operationStats.skip();
+      return;
+    }
+    String id;
+    switch (operation) {
+      case CREATE:
+        call(HttpMethod.POST, PETS_PATH, newPet(null), dueNanos, operationStats,
+          body -> idPool.add(new JsonObject(body).getString("id")));
+        break;
+      case SEARCH:
+        String genus = "Seed-" + (ThreadLocalRandom.current().nextInt(Math.max(seedSize, 1)) + 1);
+        call(HttpMethod.GET, PETS_PATH + "?limit=10&query=" + encode("genus=" + genus), null, dueNanos, operationStats, null);
+        break;
+      case GET:
+        id = idPool.pick();
+        if (id == null) {
+          operationStats.skip();
+        } else {
+          call(HttpMethod.GET, PETS_PATH + "/" + id, null, dueNanos, operationStats, null);
+        }
+        break;
+      case PUT:
+        id = idPool.pick();
+        if (id == null) {
+          operationStats.skip();
+        } else {
+          call(HttpMethod.PUT, PETS_PATH + "/" + id, newPet(id), dueNanos, operationStats, null);
+        }
+        break;
+      case DELETE:
+        id = idPool.take();
+        if (id == null) {
+          operationStats.skip();
+        } else {
+          call(HttpMethod.DELETE, PETS_PATH + "/" + id, null, dueNanos, operationStats, null);
+        }
+        break;
+      case ADOPT:
+        id = idPool.take();
+        if (id == null) {
+          operationStats.skip();
+        } else {
+          call(HttpMethod.POST, PETS_PATH + "/adopt/" + id, null, dueNanos, operationStats, null);
+        }
+        break;
+      default:
+        throw new IllegalStateException("Unknown operation " + operation);
+    }
+  }
+
+  private void report() throws Exception {
+    double seconds = durationSeconds;
+    System.out.printf("%n%-8s %10s %8s %8s %9s %9s %9s %9s %9s %9s%n",
+      "op", "requests", "errors", "skipped", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+    for (Operation operation : mix.getOperations()) {
+      OperationStats operationStats = stats.get(operation);
+      Histogram histogram = operationStats.getHistogram();
+      System.out.printf("%-8s %10d %8d %8d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+        operation.name().toLowerCase(), histogram.getTotalCount(), operationStats.getErrors(), operationStats.getSkipped(),
+        histogram.getTotalCount() / seconds,
+        millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+        millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+        millis(histogram.getMaxValue()));
+    }
+    System.out.println();
+    for (Operation operation : mix.getOperations()) {
+      System.out.printf("%-8s statuses %s%n", operation.name().toLowerCase(), stats.get(operation).getStatuses());
+    }
+
+    // the adopt latency above is the whole transaction; the module times each of its stages
+    System.out.println("\nAdoption transaction stages as timed by the module since startup:");
+    String metrics = get("/pet-admin/metrics");
+    for (String line : metrics.split("\n")) {
+      if (line.startsWith("pets_request_duration_seconds{endpoint=\"postPetsAdoptById\"")
+        || ADOPTION_STAGES.stream().anyMatch(stage -> line.startsWith("pets_stage_duration_seconds{stage=\"" + stage + "\""))) {
+        System.out.println(line);
+      }
+    }
+  }
+
+  private String newPet(String id) {
+    JsonObject pet = new JsonObject()
+      .put("genus", "Load-" + genusCounter.incrementAndGet())
+      .put("quantity", ThreadLocalRandom.current().nextInt(100));
+    return id == null ? pet.encode() : pet.put("id", id).encode();
+  }
+
+  private void call(HttpMethod method, String uri, String body, long dueNanos, OperationStats operationStats, Handler<String> onSuccess) {
+    inFlight.incrementAndGet();
+    HttpClientRequest request = client.request(method, uri, res -> res.bodyHandler(buffer -> {
+      inFlight.decrementAndGet();
+      operationStats.record(System.nanoTime() - dueNanos, res.statusCode());
+      if (res.statusCode() < 300 && onSuccess != null) {
+        onSuccess.handle(buffer.toString());
+      }
+    }));
+    request.exceptionHandler(e -> {
+      inFlight.decrementAndGet();
+      operationStats.record(System.nanoTime() - dueNanos, 0);
+    });
+    request.setTimeout(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+    request.putHeader(RestVerticle.OKAPI_HEADER_TENANT, TENANT);
+    request.putHeader("Accept", "application/json, text/plain");
+    if (body == null) {
+      request.end();
+    } else {
+      request.putHeader("Content-Type", "application/json");
+      request.end(body);
+    }
+  }
+
+  private String get(String uri) throws Exception {
+    CompletableFuture<String> response = new CompletableFuture<>();
+    HttpClientRequest request = client.request(HttpMethod.GET, uri, res -> res.bodyHandler(buffer -> response.complete(buffer.toString())));
+    request.exceptionHandler(response::completeExceptionally);
+    request.putHeader(RestVerticle.OKAPI_HEADER_TENANT, TENANT);
+    request.putHeader("Accept", "text/plain");
+    request.end();
+    return response.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  private ResultSet sql(String sql) throws Exception {
+    CompletableFuture<ResultSet> done = new CompletableFuture<>();
+    pgClient.select(sql, reply -> {
+      if (reply.succeeded()) {
+        done.complete(reply.result());
+      } else {
+        done.completeExceptionally(reply.cause());
+      }
+    });
+    return done.get(SEED_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+  }
+
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static double millis(long micros) {
+    return micros / 1000.0;
+  }
+}
@@ -0,0 +1,67 @@
+package org.folio.rest.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and response counts of one operation. Latency is measured from the time the request
+ * was due by the schedule, not from the time it was sent, so a stalled server is not hidden by the
+ * generator waiting for it (coordinated omission).
+ */
+public class OperationStats {
+  private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+  private final Histogram histogram = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+  private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder skipped = new LongAdder();
+
+  /**
+   * @param status - HTTP status of the response, 0 if the request failed without one
+   */
+  public void record(long latencyNanos, int status) {
+    histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), HIGHEST_TRACKABLE_MICROS));
+    statuses.computeIfAbsent(status, k -> new LongAdder()).increment();
+    if (status == 0 || status >= 400) {
+      errors.increment();
+    }
+  }
+
+  /**
+   * Counts a request that could not be sent: no id to address, or too many requests in flight
+   */
+  public void skip() {
+    skipped.increment();
+  }
+
+  public void reset() {
+    histogram.reset();
+    statuses.clear();
+    errors.reset();
+    skipped.reset();
+  }
+
+  public Histogram getHistogram() {
+    return histogram.copy();
+  }
+
+  public long getErrors() {
+    return errors.sum();
+  }
+
+  public long getSkipped() {
+    return skipped.sum();
+  }
+
+  public Map<Integer, Long> getStatuses() {
+    Map<Integer, Long> counts = new TreeMap<>();
+    statuses.forEach((status, count) -> counts.put(status, count.sum()));
+    return counts;
+  }
+}
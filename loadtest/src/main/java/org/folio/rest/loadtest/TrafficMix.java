@@ -0,0 +1,69 @@
+package org.folio.rest.loadtest;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Weighted mix of operations, parsed from {@code create=5,search=30,get=45,put=10,delete=5,adopt=5}.
+ * Operations left out of the spec are not sent.
+ */
+public class TrafficMix {
+
+  public enum Operation {
+    CREATE, SEARCH, GET, PUT, DELETE, ADOPT
+  }
+
+  private final Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+  private final List<Operation> operations = new ArrayList<>();
+  private final int[] cumulativeWeights;
+  private final int totalWeight;
+
+  public TrafficMix(String spec) {
+    for (String entry : spec.split(",")) {
+      String[] pair = entry.trim().split("=");
+      if (pair.length != 2) {
+        throw new IllegalArgumentException("Expected operation=weight, got '" + entry + "'");
+      }
+      int weight = Integer.parseInt(pair[1].trim());
+      if (weight < 0) {
+        throw new IllegalArgumentException("Negative weight for " + pair[0]);
+      }
+      if (weight > 0) {
+        weights.put(Operation.valueOf(pair[0].trim().toUpperCase()), weight);
+      }
+    }
+    if (weights.isEmpty()) {
+      throw new IllegalArgumentException("Traffic mix '" + spec + "' has no operation with a positive weight");
+    }
+    cumulativeWeights = new int[weights.size()];
+    int sum = 0;
+    for (Map.Entry<Operation, Integer> weight : weights.entrySet()) {
+      sum += weight.getValue();
+      cumulativeWeights[operations.size()] = sum;
+      operations.add(weight.getKey());
+    }
+    totalWeight = sum;
+  }
+
+  public Operation next() {
+    int draw = ThreadLocalRandom.current().nextInt(totalWeight);
+    for (int i = 0; i < cumulativeWeights.length; i++) {
+      if (draw < cumulativeWeights[i]) {
+        return operations.get(i);
+      }
+    }
+    throw new IllegalStateException("draw " + draw + " beyond total weight " + totalWeight);
+  }
+
+  public List<Operation> getOperations() {
+    return operations;
+  }
+
+  @Override
+  public String toString() {
+    return weights.toString();
+  }
+}
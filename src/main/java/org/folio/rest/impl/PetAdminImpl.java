@@ -0,0 +1,198 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.sql.SQLConnection;
+import org.folio.rest.jaxrs.model.ArchiveResult;
+import org.folio.rest.jaxrs.model.QueryPlan;
+import org.folio.rest.jaxrs.resource.PetAdmin;
+import org.folio.rest.persist.PostgresClient;
+import org.folio.rest.utils.LatencyMetrics;
+import org.folio.rest.utils.PgQuery;
+import org.folio.rest.utils.TenantContext;
+import org.z3950.zing.cql.cql2pgjson.FieldException;
+import org.z3950.zing.cql.cql2pgjson.QueryValidationException;
+
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class PetAdminImpl implements PetAdmin {
+
+  private static final String HOMELESS_PETS_TABLE_NAME = "homeless_pets";
+  private static final String[] ALL_FIELDS = {"*"};
+  private static final int QUERY_PLAN_LIMIT = 10;
+
+  private final String tenantId;
+  private final TenantContext tenantContext;
+  private final PostgresClient pgClient;
+
+  public PetAdminImpl(Vertx vertx, String tenantId) {
+    this.tenantId = tenantId;
+    this.tenantContext = TenantContext.forTenant(vertx, tenantId);
+    this.pgClient = tenantContext.getPgClient();
+  }
+
+  @Override
+  public void getPetAdminMetrics(Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    try {
+      vertxContext.runOnContext(v ->
+        asyncResultHandler.handle(Future.succeededFuture(GetPetAdminMetricsResponse.respond200WithTextPlain(LatencyMetrics.forTenant(tenantId).toPrometheus())))
+      );
+    } catch (Exception e) {
+      asyncResultHandler.handle(Future.succeededFuture(GetPetAdminMetricsResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+    }
+  }
+
+  @Override
+  public void getPetAdminQueryPlan(String query, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    try {
+      vertxContext.runOnContext(v ->
+        Future.succeededFuture(query)
+          .compose(this::buildSql)
+          .compose(sql -> explain(sql).map(plans -> queryPlan(query, sql, plans)))
+          .setHandler(res -> {
+            if (res.succeeded()) {
+              asyncResultHandler.handle(Future.succeededFuture(GetPetAdminQueryPlanResponse.respond200WithApplicationJson(res.result())));
+            } else if (res.cause() instanceof FieldException || res.cause() instanceof QueryValidationException
+              || res.cause() instanceof IllegalArgumentException) {
+              asyncResultHandler.handle(Future.succeededFuture(GetPetAdminQueryPlanResponse.respond400WithTextPlain(res.cause().getMessage())));
+            } else {
+              asyncResultHandler.handle(Future.succeededFuture(GetPetAdminQueryPlanResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+            }
+          })
+      );
+    } catch (Exception e) {
+      asyncResultHandler.handle(Future.succeededFuture(GetPetAdminQueryPlanResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+    }
+  }
+
+  @Override
+  public void postPetAdminArchive(Integer afterDays, Integer retentionMonths, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+    try {
+      vertxContext.runOnContext(v ->
+        tenantContext.getArchiver().archive(afterDays, retentionMonths)
+          .map(result -> result.mapTo(ArchiveResult.class))
+          .setHandler(res -> {
+            if (res.succeeded()) {
+              asyncResultHandler.handle(Future.succeededFuture(PostPetAdminArchiveResponse.respond200WithApplicationJson(res.result())));
+            } else {
+              asyncResultHandler.handle(Future.succeededFuture(PostPetAdminArchiveResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+            }
+          })
+      );
+    } catch (Exception e) {
+      asyncResultHandler.handle(Future.succeededFuture(PostPetAdminArchiveResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+    }
+  }
+
+  /**
+   * Translates the query exactly as GET /pets does
+   */
+  private Future<String> buildSql(String query) {
+    Future<String> future = Future.future();
+    try {
+      PgQuery pgQuery = tenantContext.query(ALL_FIELDS, HOMELESS_PETS_TABLE_NAME).query(query).limit(QUERY_PLAN_LIMIT).build();
+      future.complete("SELECT jsonb FROM " + PostgresClient.convertToPsqlStandard(tenantId) + "." + pgQuery.getTable() + pgQuery.getFilter());
+    } catch (Exception e) {
+      future.fail(e);
+    }
+    return future;
+  }
+
+  /**
+   * Plans the statement twice: as the planner chooses with the current settings and statistics, then with
+   * sequential scans disabled, which shows whether any index can answer it. Runs inside a transaction that
+   * is rolled back so the setting does not leak to the pooled connection.
+   *
+   * @return - future of the chosen plan and the plan without sequential scans
+   */
+  private Future<JsonObject[]> explain(String sql) {
+    Future<JsonObject[]> future = Future.future();
+    pgClient.startTx(tx -> {
+      if (tx.failed()) {
+        future.fail(tx.cause());
+        return;
+      }
+      SQLConnection connection = tx.result();
+      JsonObject[] plans = new JsonObject[2];
+      Future<Void> chosen = Future.future();
+      connection.query("EXPLAIN (FORMAT JSON) " + sql, reply -> {
+        if (reply.failed()) {
+          chosen.fail(reply.cause());
+          return;
+        }
+        plans[0] = plan(reply.result().getResults().get(0).getValue(0));
+        chosen.complete();
+      });
+      chosen
+        .compose(v -> {
+          Future<Void> set = Future.future();
+          connection.execute("SET LOCAL enable_seqscan = off", set.completer());
+          return set;
+        })
+        .compose(v -> {
+          Future<Void> forced = Future.future();
+          connection.query("EXPLAIN (FORMAT JSON) " + sql, reply -> {
+            if (reply.failed()) {
+              forced.fail(reply.cause());
+              return;
+            }
+            plans[1] = plan(reply.result().getResults().get(0).getValue(0));
+            forced.complete();
+          });
+          return forced;
+        })
+        .setHandler(res -> pgClient.rollbackTx(tx, done -> {
+          if (res.failed()) {
+            future.fail(res.cause());
+          } else {
+            future.complete(plans);
+          }
+        }));
+    });
+    return future;
+  }
+
+  private static JsonObject plan(Object explained) {
+    JsonArray plans = explained instanceof JsonArray ? (JsonArray) explained : new JsonArray(explained.toString());
+    return plans.getJsonObject(0).getJsonObject("Plan");
+  }
+
+  private QueryPlan queryPlan(String query, String sql, JsonObject[] plans) {
+    QueryPlan queryPlan = new QueryPlan();
+    queryPlan.setQuery(query);
+    queryPlan.setSql(sql);
+    queryPlan.setUsedIndexes(new ArrayList<>());
+    List<String> chosenScans = new ArrayList<>();
+    collectScans(plans[0], queryPlan.getUsedIndexes(), chosenScans);
+    queryPlan.setIndexUsed(chosenScans.isEmpty());
+    queryPlan.setIndexes(new ArrayList<>());
+    queryPlan.setSequentialScans(new ArrayList<>());
+    collectScans(plans[1], queryPlan.getIndexes(), queryPlan.getSequentialScans());
+    queryPlan.setIndexUsable(queryPlan.getSequentialScans().isEmpty());
+    return queryPlan;
+  }
+
+  private void collectScans(JsonObject node, List<String> indexes, List<String> sequentialScans) {
+    if ("Seq Scan".equals(node.getString("Node Type"))) {
+      sequentialScans.add(node.getString("Relation Name"));
+    }
+    String indexName = node.getString("Index Name");
+    if (indexName != null && !indexes.contains(indexName)) {
+      indexes.add(indexName);
+    }
+    JsonArray children = node.getJsonArray("Plans");
+    if (children != null) {
+      for (int i = 0; i < children.size(); i++) {
+        collectScans(children.getJsonObject(i), indexes, sequentialScans);
+      }
+    }
+  }
+}
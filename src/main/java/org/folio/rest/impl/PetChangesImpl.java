@@ -0,0 +1,181 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.sql.SQLConnection;
+import org.folio.rest.jaxrs.model.Pet;
+import org.folio.rest.jaxrs.model.PetChange;
+import org.folio.rest.jaxrs.model.PetChanges;
+import org.folio.rest.persist.PostgresClient;
+import org.folio.rest.utils.LatencyMetrics;
+import org.folio.rest.utils.PetChangeFeed;
+import org.folio.rest.utils.TenantContext;
+
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class PetChangesImpl implements org.folio.rest.jaxrs.resource.PetChanges {
+
+  private static final String PET_CHANGES_TABLE_NAME = "pet_changes";
+
+  private final Vertx vertx;
+  private final String tenantId;
+  private final String schema;
+  private final PostgresClient pgClient;
+  private final LatencyMetrics metrics;
+
+  public PetChangesImpl(Vertx vertx, String tenantId) {
+    this.vertx = vertx;
+    this.tenantId = tenantId;
+    this.metrics = LatencyMetrics.forTenant(tenantId);
+    this.schema = PostgresClient.convertToPsqlStandard(tenantId);
+    this.pgClient = TenantContext.forTenant(vertx, tenantId).getPgClient();
+  }
+
+  @Override
+  public void getPetChanges(long since, int limit, int wait, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> resultHandler, Context vertxContext) {
+    Handler<AsyncResult<Response>> trackedHandler = metrics.track("getPetChanges", resultHandler);
+    try {
+      vertxContext.runOnContext(v ->
+        readChanges(since, limit, wait).setHandler(res -> {
+          if (res.succeeded()) {
+            trackedHandler.handle(Future.succeededFuture(GetPetChangesResponse.respond200WithApplicationJson(res.result())));
+          } else {
+            trackedHandler.handle(Future.succeededFuture(GetPetChangesResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+          }
+        })
+      );
+    } catch (Exception e) {
+      trackedHandler.handle(Future.succeededFuture(GetPetChangesResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+    }
+  }
+
+  /**
+   * Reads the changes after since; if there are none and the client is willing to wait, reads again
+   * once a change is committed or the wait is over
+   */
+  private Future<PetChanges> readChanges(long since, int limit, int wait) {
+    if (wait == 0) {
+      return read(since, limit);
+    }
+    // registered before the read: a change committed after it wakes the waiter
+    Future<Void> changed = Future.future();
+    PetChangeFeed.Waiter waiter = PetChangeFeed.getInstance().await(vertx, schema, TimeUnit.SECONDS.toMillis(wait), changed::complete);
+    return read(since, limit).compose(page -> {
+      if (!page.getChanges().isEmpty()) {
+        waiter.cancel();
+        return Future.succeededFuture(page);
+      }
+      return changed.compose(v -> read(since, limit));
+    });
+  }
+
+  private Future<PetChanges> read(long since, int limit) {
+    return metrics.time("sequencePetChanges", this::sequenceIfNeeded)
+      .compose(v -> metrics.time("selectPetChanges", () -> select(since, limit)));
+  }
+
+  /**
+   * Looks for unnumbered changes on the partial index before taking the lock, so that reads of a quiet
+   * log do not write
+   */
+  private Future<Void> sequenceIfNeeded() {
+    Future<Void> future = Future.future();
+    pgClient.select("SELECT EXISTS (SELECT 1 FROM " + schema + "." + PET_CHANGES_TABLE_NAME + " WHERE seq IS NULL)", reply -> {
+      if (reply.failed()) {
+        future.fail(reply.cause());
+      } else if (Boolean.TRUE.equals(reply.result().getResults().get(0).getBoolean(0))) {
+        sequence().setHandler(future.completer());
+      } else {
+        future.complete();
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Numbers the committed changes that have no position yet. The triggers cannot do it: ids are
+   * taken in insert order, not in commit order, so a reader could move past an id whose transaction
+   * commits later. Rows only become visible here once committed, and the advisory lock makes the
+   * readers number them one at a time, so positions follow commit order.
+   */
+  private Future<Void> sequence() {
+    Future<Void> future = Future.future();
+    String table = schema + "." + PET_CHANGES_TABLE_NAME;
+    pgClient.startTx(tx -> {
+      if (tx.failed()) {
+        future.fail(tx.cause());
+        return;
+      }
+      SQLConnection connection = tx.result();
+      connection.query("SELECT pg_advisory_xact_lock(hashtext('" + table + "'))", lockReply -> {
+        if (lockReply.failed()) {
+          pgClient.rollbackTx(tx, res -> future.fail(lockReply.cause()));
+          return;
+        }
+        // numbered in id order, so changes of one transaction keep their order
+        connection.update("UPDATE " + table + " AS changes SET seq = numbered.seq"
+          + " FROM (SELECT id, nextval('" + schema + ".pet_changes_seq') AS seq"
+          + " FROM (SELECT id FROM " + table + " WHERE seq IS NULL ORDER BY id FOR UPDATE) AS unsequenced) AS numbered"
+          + " WHERE changes.id = numbered.id", updateReply -> {
+          if (updateReply.failed()) {
+            pgClient.rollbackTx(tx, res -> future.fail(updateReply.cause()));
+            return;
+          }
+          pgClient.endTx(tx, future.completer());
+        });
+      });
+    });
+    return future;
+  }
+
+  private Future<PetChanges> select(long since, int limit) {
+    Future<PetChanges> future = Future.future();
+    String sql = "SELECT seq, operation, table_name, pet_id, jsonb::text, (extract(epoch FROM changed_at) * 1000)::bigint"
+      + " FROM " + schema + "." + PET_CHANGES_TABLE_NAME
+      + " WHERE seq > " + since + " ORDER BY seq LIMIT " + limit;
+    pgClient.select(sql, reply -> {
+      if (reply.failed()) {
+        future.fail(reply.cause());
+        return;
+      }
+      try {
+        List<PetChange> changes = new ArrayList<>();
+        for (JsonArray row : reply.result().getResults()) {
+          changes.add(petChange(row));
+        }
+        PetChanges petChanges = new PetChanges();
+        petChanges.setChanges(changes);
+        petChanges.setTotalRecords(changes.size());
+        petChanges.setNextSince(changes.isEmpty() ? since : changes.get(changes.size() - 1).getSeq());
+        future.complete(petChanges);
+      } catch (Exception e) {
+        future.fail(e);
+      }
+    });
+    return future;
+  }
+
+  private PetChange petChange(JsonArray row) {
+    PetChange change = new PetChange();
+    change.setSeq(row.getLong(0));
+    change.setOperation(PetChange.Operation.fromValue(row.getString(1)));
+    change.setTable(row.getString(2));
+    change.setPetId(row.getString(3));
+    String pet = row.getString(4);
+    if (pet != null) {
+      change.setPet(new JsonObject(pet).mapTo(Pet.class));
+    }
+    change.setChangedAt(new Date(row.getLong(5)));
+    return change;
+  }
+}
@@ -0,0 +1,63 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import org.folio.rest.jaxrs.resource.PetExport;
+import org.folio.rest.tools.utils.BinaryOutStream;
+import org.folio.rest.utils.LatencyMetrics;
+import org.folio.rest.utils.PetExporter;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.util.Map;
+
+public class PetExportImpl implements PetExport {
+
+  // RMB sends a single entity, the whole export is held in memory
+  private static final long MAX_BYTES = Long.getLong("pets.export.maxBytes", 64L * 1024 * 1024);
+
+  private final String tenantId;
+  private final PetExporter exporter;
+  private final LatencyMetrics metrics;
+
+  public PetExportImpl(Vertx vertx, String tenantId) {
+    this.tenantId = tenantId;
+    this.metrics = LatencyMetrics.forTenant(tenantId);
+    this.exporter = new PetExporter(vertx, tenantId);
+  }
+
+  @Override
+  public void getPetExport(String table, String format, String query, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> resultHandler, Context vertxContext) {
+    Handler<AsyncResult<Response>> trackedHandler = metrics.track("getPetExport", resultHandler);
+    try {
+      String sql;
+      try {
+        sql = exporter.copySql(table, format, query);
+      } catch (IllegalArgumentException e) {
+        trackedHandler.handle(Future.succeededFuture(GetPetExportResponse.respond400WithTextPlain(e.getMessage())));
+        return;
+      }
+      vertxContext.runOnContext(v ->
+        metrics.time("copyPets", () -> exporter.copyOut(sql, MAX_BYTES))
+          .setHandler(res -> {
+            if (res.succeeded()) {
+              BinaryOutStream body = new BinaryOutStream();
+              body.setData(res.result());
+              trackedHandler.handle(Future.succeededFuture(Response.ok(body)
+                .header(HttpHeaders.CONTENT_TYPE, PetExporter.contentType(format))
+                .build()));
+            } else if (res.cause() instanceof PetExporter.TooLargeException) {
+              trackedHandler.handle(Future.succeededFuture(GetPetExportResponse.respond413WithTextPlain(res.cause().getMessage())));
+            } else {
+              trackedHandler.handle(Future.succeededFuture(GetPetExportResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+            }
+          })
+      );
+    } catch (Exception e) {
+      trackedHandler.handle(Future.succeededFuture(GetPetExportResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+    }
+  }
+}
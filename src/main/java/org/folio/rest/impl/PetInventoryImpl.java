@@ -0,0 +1,156 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.SQLConnection;
+import org.folio.rest.jaxrs.model.GenusInventory;
+import org.folio.rest.jaxrs.model.PetInventory;
+import org.folio.rest.persist.PostgresClient;
+import org.folio.rest.utils.LatencyMetrics;
+import org.folio.rest.utils.ReplicaRouter;
+import org.folio.rest.utils.TenantContext;
+
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class PetInventoryImpl implements org.folio.rest.jaxrs.resource.PetInventory {
+
+  private static final String HOMELESS_PETS_TABLE_NAME = "homeless_pets";
+  private static final String PET_INVENTORY_TABLE_NAME = "pet_inventory";
+
+  private final String tenantId;
+  private final String schema;
+  private final PostgresClient pgClient;
+  private final ReplicaRouter replicaRouter;
+  private final LatencyMetrics metrics;
+
+  public PetInventoryImpl(Vertx vertx, String tenantId) {
+    TenantContext tenantContext = TenantContext.forTenant(vertx, tenantId);
+    this.tenantId = tenantId;
+    this.metrics = LatencyMetrics.forTenant(tenantId);
+    this.schema = PostgresClient.convertToPsqlStandard(tenantId);
+    this.pgClient = tenantContext.getPgClient();
+    this.replicaRouter = tenantContext.getReplicaRouter();
+  }
+
+  @Override
+  public void getPetInventory(Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> resultHandler, Context vertxContext) {
+    Handler<AsyncResult<Response>> trackedHandler = metrics.track("getPetInventory", resultHandler);
+    try {
+      vertxContext.runOnContext(v ->
+        metrics.time("selectPetInventory", () -> replicaRouter.reader(okapiHeaders).select(selectSql()))
+          .map(this::petInventory)
+          .setHandler(res -> {
+            if (res.succeeded()) {
+              trackedHandler.handle(Future.succeededFuture(GetPetInventoryResponse.respond200WithApplicationJson(res.result())));
+            } else {
+              trackedHandler.handle(Future.succeededFuture(GetPetInventoryResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+            }
+          })
+      );
+    } catch (Exception e) {
+      trackedHandler.handle(Future.succeededFuture(GetPetInventoryResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+    }
+  }
+
+  @Override
+  public void postPetInventoryRebuild(Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> resultHandler, Context vertxContext) {
+    Handler<AsyncResult<Response>> trackedHandler = metrics.track("postPetInventoryRebuild", resultHandler);
+    try {
+      vertxContext.runOnContext(v ->
+        metrics.time("rebuildPetInventory", this::rebuild)
+          .map(this::petInventory)
+          .setHandler(res -> {
+            if (res.succeeded()) {
+              trackedHandler.handle(Future.succeededFuture(PostPetInventoryRebuildResponse.respond200WithApplicationJson(res.result())));
+            } else {
+              trackedHandler.handle(Future.succeededFuture(PostPetInventoryRebuildResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+            }
+          })
+      );
+    } catch (Exception e) {
+      trackedHandler.handle(Future.succeededFuture(PostPetInventoryRebuildResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+    }
+  }
+
+  private String selectSql() {
+    return "SELECT genus, pets, quantity FROM " + schema + "." + PET_INVENTORY_TABLE_NAME + " ORDER BY genus";
+  }
+
+  /**
+   * Recounts the inventory in one transaction. The SHARE lock lets reads of the pets through but waits for
+   * running writes and holds back new ones until the commit, so no change is counted twice or lost.
+   */
+  private Future<ResultSet> rebuild() {
+    Future<ResultSet> future = Future.future();
+    String inventory = schema + "." + PET_INVENTORY_TABLE_NAME;
+    String pets = schema + "." + HOMELESS_PETS_TABLE_NAME;
+    pgClient.startTx(tx -> {
+      if (tx.failed()) {
+        future.fail(tx.cause());
+        return;
+      }
+      SQLConnection connection = tx.result();
+      execute(connection, "LOCK TABLE " + pets + " IN SHARE MODE")
+        .compose(v -> execute(connection, "DELETE FROM " + inventory))
+        .compose(v -> execute(connection, "INSERT INTO " + inventory + " (genus, pets, quantity)"
+          + " SELECT lower(f_unaccent(jsonb->>'genus')), count(*), coalesce(sum((jsonb->>'quantity')::bigint), 0) FROM " + pets
+          + " WHERE jsonb->>'genus' IS NOT NULL GROUP BY 1"))
+        .compose(v -> query(connection, selectSql()))
+        .setHandler(res -> {
+          if (res.failed()) {
+            pgClient.rollbackTx(tx, rollback -> future.fail(res.cause()));
+            return;
+          }
+          pgClient.endTx(tx, done -> {
+            if (done.failed()) {
+              future.fail(done.cause());
+            } else {
+              future.complete(res.result());
+            }
+          });
+        });
+    });
+    return future;
+  }
+
+  private Future<Void> execute(SQLConnection connection, String sql) {
+    Future<Void> future = Future.future();
+    connection.execute(sql, future.completer());
+    return future;
+  }
+
+  private Future<ResultSet> query(SQLConnection connection, String sql) {
+    Future<ResultSet> future = Future.future();
+    connection.query(sql, future.completer());
+    return future;
+  }
+
+  private PetInventory petInventory(ResultSet resultSet) {
+    List<GenusInventory> genera = new ArrayList<>();
+    long totalPets = 0;
+    long totalQuantity = 0;
+    for (JsonArray row : resultSet.getResults()) {
+      GenusInventory genus = new GenusInventory();
+      genus.setGenus(row.getString(0));
+      genus.setPets(row.getLong(1));
+      genus.setQuantity(row.getLong(2));
+      genera.add(genus);
+      totalPets += genus.getPets();
+      totalQuantity += genus.getQuantity();
+    }
+    PetInventory petInventory = new PetInventory();
+    petInventory.setGenera(genera);
+    petInventory.setTotalPets(totalPets);
+    petInventory.setTotalQuantity(totalQuantity);
+    petInventory.setTotalRecords(genera.size());
+    return petInventory;
+  }
+}
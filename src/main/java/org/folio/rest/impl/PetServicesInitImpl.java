@@ -0,0 +1,23 @@
+package org.folio.rest.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import org.folio.rest.resource.interfaces.InitAPI;
+import org.folio.rest.utils.PetServices;
+
+public class PetServicesInitImpl implements InitAPI {
+
+  @Override
+  public void init(Vertx vertx, Context context, Handler<AsyncResult<Boolean>> resultHandler) {
+    vertx.deployVerticle(new PetServices(), res -> {
+      if (res.succeeded()) {
+        resultHandler.handle(Future.succeededFuture(true));
+      } else {
+        resultHandler.handle(Future.failedFuture(res.cause()));
+      }
+    });
+  }
+}
@@ -5,41 +5,97 @@ import io.vertx.core.Context;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
-import io.vertx.ext.sql.UpdateResult;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.sql.SQLConnection;
+import org.folio.rest.jaxrs.model.AdoptionResult;
+import org.folio.rest.jaxrs.model.Metadata;
 import org.folio.rest.jaxrs.model.Pet;
+import org.folio.rest.jaxrs.model.PetBatchItem;
+import org.folio.rest.jaxrs.model.PetIds;
+import org.folio.rest.jaxrs.model.PetsBatchResult;
 import org.folio.rest.jaxrs.model.PetsCollection;
 import org.folio.rest.jaxrs.resource.Pets;
 import org.folio.rest.persist.Criteria.Criteria;
 import org.folio.rest.persist.Criteria.Criterion;
 import org.folio.rest.persist.PostgresClient;
 import org.folio.rest.persist.interfaces.Results;
+import org.folio.rest.utils.ConcurrencyLimiter;
+import org.folio.rest.utils.ETags;
+import org.folio.rest.utils.LatencyMetrics;
+import org.folio.rest.utils.PetCache;
+import org.folio.rest.utils.PetInvalidationBus;
+import org.folio.rest.utils.PetRepository;
+import org.folio.rest.utils.PgCursor;
+import org.folio.rest.utils.PgParams;
 import org.folio.rest.utils.PgQuery;
 import org.folio.rest.utils.PgTransaction;
+import org.folio.rest.utils.ReplicaRouter;
+import org.folio.rest.utils.TenantContext;
 
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 
 public class PetsImpl implements Pets {
 
   private static final String HOMELESS_PETS_TABLE_NAME = "homeless_pets";
   private static final String ADOPTED_PETS_TABLE_NAME = "adopted_pets";
+  private static final String ADOPTED_PETS_ARCHIVE_TABLE_NAME = "adopted_pets_archive";
+  private static final String HOMELESS_PETS_GENUS_INDEX = "homeless_pets_genus_idx_unique";
+  private static final String USER_ID_HEADER = "x-okapi-user-id";
   private static final String[] ALL_FIELDS = {"*"};
+  private static final int BATCH_CHUNK_SIZE = Integer.getInteger("pets.batch.chunkSize", 1000);
+  private static final String ADOPT_IN_SINGLE_STATEMENT = "pets.adopt.singleStatement";
+  private static final String WRITE_BEHIND = "pets.writeBehind.enabled";
+  private static final int ADOPT_CHUNK_SIZE = Integer.getInteger("pets.adopt.chunkSize", 500);
+  private static final String ESTIMATE_TOTAL_RECORDS = "estimate";
+  private static final String ADOPTED_AT = "to_char(now() AT TIME ZONE 'UTC', 'YYYY-MM-DD\"T\"HH24:MI:SS.MS\"+0000\"')";
+  private static final String MOVE_ADOPTED = "adopted";
+  private static final String MOVE_VACATED = "vacated";
+  private static final String MOVE_CONFLICT = "conflict";
+  private static final Set<String> PET_FIELDS = new HashSet<>(Arrays.asList("id", "genus", "quantity", "notes", "metadata"));
 
+  private final String tenantId;
+  private final TenantContext tenantContext;
   private final PostgresClient pgClient;
+  private final PetCache petCache;
+  private final PetRepository petRepository;
+  private final ConcurrencyLimiter limiter;
+  private final ReplicaRouter replicaRouter;
+  private final LatencyMetrics metrics;
 
   public PetsImpl(Vertx vertx, String tenantId) {
-    this.pgClient = PostgresClient.getInstance(vertx, tenantId);
+    this.tenantId = tenantId;
+    this.metrics = LatencyMetrics.forTenant(tenantId);
+    this.tenantContext = TenantContext.forTenant(vertx, tenantId);
+    this.pgClient = tenantContext.getPgClient();
+    this.petCache = tenantContext.getPetCache();
+    this.petRepository = tenantContext.getPetRepository();
+    this.limiter = tenantContext.getLimiter();
+    this.replicaRouter = tenantContext.getReplicaRouter();
   }
 
   @Override
-  public void postPets(String lang, Pet entity, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+  public void postPets(String lang, Pet entity, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> resultHandler, Context vertxContext) {
+    Handler<AsyncResult<Response>> trackedHandler = replicaRouter.afterWrite(okapiHeaders, metrics.track("postPets", resultHandler));
+    long scheduled = System.nanoTime();
     try {
-      vertxContext.runOnContext(v -> {
+      limiter.execute(vertxContext, trackedHandler, asyncResultHandler -> {
+        metrics.record("eventLoopDelay", System.nanoTime() - scheduled);
         String id = UUID.randomUUID().toString();
         entity.setId(id);
-        savePet(entity)
+        metrics.time("savePet", () -> savePet(entity))
           .setHandler(res -> {
             if (res.succeeded()) {
               asyncResultHandler.handle(Future.succeededFuture(PostPetsResponse.respond201WithApplicationJson(entity, PostPetsResponse.headersFor201())));
@@ -49,61 +105,240 @@ public class PetsImpl implements Pets {
           });
       });
     } catch (Exception e) {
-      asyncResultHandler.handle(Future.succeededFuture(PostPetsResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+      trackedHandler.handle(Future.succeededFuture(PostPetsResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
     }
   }
 
   @Override
-  public void getPets(String query, int offset, int limit, String lang, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+  public void postPetsBatch(PetsCollection entity, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> resultHandler, Context vertxContext) {
+    Handler<AsyncResult<Response>> trackedHandler = replicaRouter.afterWrite(okapiHeaders, metrics.track("postPetsBatch", resultHandler));
+    long scheduled = System.nanoTime();
     try {
-      vertxContext.runOnContext(v -> {
-        PgQuery.PgQueryBuilder queryBuilder = new PgQuery.PgQueryBuilder(ALL_FIELDS, HOMELESS_PETS_TABLE_NAME).query(query).offset(offset).limit(limit);
+      limiter.execute(vertxContext, trackedHandler, asyncResultHandler -> {
+        metrics.record("eventLoopDelay", System.nanoTime() - scheduled);
+        List<Pet> pets = entity.getPets();
+        pets.forEach(pet -> {
+          pet.setId(UUID.randomUUID().toString());
+          pet.setMetadata(creationMetadata(okapiHeaders));
+        });
+        metrics.time("savePets", () -> savePets(pets))
+          .setHandler(res -> {
+            if (res.succeeded()) {
+              asyncResultHandler.handle(Future.succeededFuture(PostPetsBatchResponse.respond201WithApplicationJson(res.result())));
+            } else {
+              asyncResultHandler.handle(Future.succeededFuture(PostPetsBatchResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+            }
+          });
+      });
+    } catch (Exception e) {
+      trackedHandler.handle(Future.succeededFuture(PostPetsBatchResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+    }
+  }
+
+  @Override
+  public void getPets(String ifNoneMatch, String query, int offset, int limit, String totalRecords, String cursor, String fields, String lang, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> resultHandler, Context vertxContext) {
+    Handler<AsyncResult<Response>> trackedHandler = metrics.track("getPets", resultHandler);
+    long scheduled = System.nanoTime();
+    try {
+      limiter.execute(vertxContext, trackedHandler, asyncResultHandler -> {
+        metrics.record("eventLoopDelay", System.nanoTime() - scheduled);
+        List<String> projection = fields == null ? null : Arrays.asList(fields.split(","));
+        if (projection != null && !PET_FIELDS.containsAll(projection)) {
+          asyncResultHandler.handle(Future.succeededFuture(GetPetsResponse.respond400WithTextPlain("fields must be a subset of " + PET_FIELDS)));
+          return;
+        }
+        PgQuery.PgQueryBuilder queryBuilder = tenantContext.query(ALL_FIELDS, HOMELESS_PETS_TABLE_NAME).query(query).offset(offset).limit(limit).cursor(cursor).projection(projection);
+        // a count over the rows after the cursor would read all of them, keyset pages estimate all matching pets
+        boolean exactCount = !ESTIMATE_TOTAL_RECORDS.equals(totalRecords) && cursor == null;
+        ReplicaRouter.Reader reader = replicaRouter.reader(okapiHeaders);
+        // with a replica every select goes through the raw path, so the body and ETag do not depend on the database that answered
+        if (projection != null || replicaRouter.isEnabled()) {
+          getRawPets(queryBuilder, exactCount, ifNoneMatch, reader, asyncResultHandler);
+          return;
+        }
         Future.succeededFuture(queryBuilder)
-          .compose(this::runGetQuery)
-          .compose(this::parseGetResults)
+          .compose(qb -> metrics.time("buildQuery", () -> buildQuery(qb)))
+          .compose(pgQuery -> metrics.time("runGetQuery", () -> runGetQuery(pgQuery, exactCount))
+            .compose(resultSet -> metrics.time("parseGetResults", () -> parseGetResults(pgQuery, resultSet)))
+            .compose(petsCollection -> metrics.time("countTotalRecords", () -> countTotalRecords(pgQuery, petsCollection, exactCount, reader))))
           .setHandler(res -> {
             if (res.succeeded()) {
-              asyncResultHandler.handle(Future.succeededFuture(GetPetsResponse.respond200WithApplicationJson(res.result())));
+              asyncResultHandler.handle(Future.succeededFuture(conditionalPojo(res.result(), ifNoneMatch)));
+            } else if (res.cause() instanceof IllegalArgumentException) {
+              asyncResultHandler.handle(Future.succeededFuture(GetPetsResponse.respond400WithTextPlain(res.cause().getMessage())));
             } else {
               asyncResultHandler.handle(Future.succeededFuture(GetPetsResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
             }
           });
       });
     } catch (Exception e) {
-      asyncResultHandler.handle(Future.succeededFuture(GetPetsResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+      trackedHandler.handle(Future.succeededFuture(GetPetsResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
     }
   }
 
-  private Future<Results<Pet>> runGetQuery(PgQuery.PgQueryBuilder queryBuilder) {
+  private Future<PgQuery> buildQuery(PgQuery.PgQueryBuilder queryBuilder) {
+    Future<PgQuery> future = Future.future();
+    try {
+      future.complete(queryBuilder.build());
+    } catch (Exception e) {
+      future.fail(e);
+    }
+    return future;
+  }
+
+  private Future<Results<Pet>> runGetQuery(PgQuery query, boolean exactCount) {
     Future<Results<Pet>> future = Future.future();
     try {
-      PgQuery query = queryBuilder.build();
-      pgClient.get(query.getTable(), Pet.class, query.getFields(), query.getCql(), true, false, future.completer());
+      pgClient.get(query.getTable(), Pet.class, query.getFields(), query.getFilter(), exactCount, false, future.completer());
     } catch (Exception e) {
       future.fail(e);
     }
     return future;
   }
 
-  private Future<PetsCollection> parseGetResults(Results<Pet> resultSet) {
+  private Future<PetsCollection> parseGetResults(PgQuery query, Results<Pet> resultSet) {
     List<Pet> petsList = resultSet.getResults();
-    int totalRecords = petsList.size();
+    Integer totalRecords = resultSet.getResultInfo() == null ? null : resultSet.getResultInfo().getTotalRecords();
     PetsCollection petsCollection = new PetsCollection();
     petsCollection.setPets(petsList);
-    petsCollection.setTotalRecords(totalRecords);
+    petsCollection.setTotalRecords(totalRecords == null ? petsList.size() : totalRecords);
+    if (query.isKeyset() && !petsList.isEmpty() && petsList.size() == query.getLimit()) {
+      petsCollection.setNextCursor(PgCursor.after(petsList.get(petsList.size() - 1).getId()).encode());
+    }
     return Future.succeededFuture(petsCollection);
   }
 
+  private Future<PetsCollection> countTotalRecords(PgQuery query, PetsCollection petsCollection, boolean exactCount, ReplicaRouter.Reader reader) {
+    if (exactCount && isPastLastPage(query, petsCollection.getPets().size())) {
+      return countAll(query, reader).map(count -> {
+        petsCollection.setTotalRecords(count);
+        return petsCollection;
+      });
+    }
+    if (exactCount) {
+      return Future.succeededFuture(petsCollection);
+    }
+    return estimateCount(query, reader).map(estimate -> {
+      petsCollection.setTotalRecords(Math.max(estimate, petsCollection.getPets().size()));
+      return petsCollection;
+    });
+  }
+
+  /**
+   * An offset past the last matching row selects no row, so there is no row that carries the window count
+   */
+  private static boolean isPastLastPage(PgQuery query, int rows) {
+    return rows == 0 && !query.isKeyset() && query.getOffset() > 0;
+  }
+
+  private Future<Integer> countAll(PgQuery query, ReplicaRouter.Reader reader) {
+    return reader.select("SELECT count(*) FROM " + fullTableName(query.getTable()) + query.getWhere())
+      .map(resultSet -> resultSet.getResults().get(0).getLong(0).intValue());
+  }
+
+  /**
+   * Reads the number of rows matching the query from the planner statistics instead of counting them
+   */
+  private Future<Integer> estimateCount(PgQuery query, ReplicaRouter.Reader reader) {
+    String sql = "EXPLAIN (FORMAT JSON) SELECT 1 FROM " + fullTableName(query.getTable()) + query.getWhere();
+    return reader.select(sql).map(resultSet -> {
+      Object plan = resultSet.getResults().get(0).getValue(0);
+      JsonArray plans = plan instanceof JsonArray ? (JsonArray) plan : new JsonArray(plan.toString());
+      return plans.getJsonObject(0).getJsonObject("Plan").getInteger("Plan Rows");
+    });
+  }
+
+  /**
+   * Answers GET /pets with the jsonb text of the rows as the database returns it, without building Pet objects,
+   * read by a single select of the projected properties
+   */
+  private void getRawPets(PgQuery.PgQueryBuilder queryBuilder, boolean exactCount, String ifNoneMatch, ReplicaRouter.Reader reader, Handler<AsyncResult<Response>> asyncResultHandler) {
+    Future.succeededFuture(queryBuilder)
+      .compose(qb -> metrics.time("buildQuery", () -> buildQuery(qb)))
+      .compose(pgQuery -> metrics.time("runProjectedQuery", () -> runProjectedQuery(pgQuery, exactCount, reader))
+        .compose(pets -> metrics.time("countTotalRecords", () -> countTotalRecords(pgQuery, pets, exactCount, reader))))
+      .setHandler(res -> {
+        if (res.succeeded()) {
+          asyncResultHandler.handle(Future.succeededFuture(conditionalJson(res.result().toJson(), ifNoneMatch)));
+        } else if (res.cause() instanceof IllegalArgumentException) {
+          asyncResultHandler.handle(Future.succeededFuture(GetPetsResponse.respond400WithTextPlain(res.cause().getMessage())));
+        } else {
+          asyncResultHandler.handle(Future.succeededFuture(GetPetsResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+        }
+      });
+  }
+
+  private Future<RawPets> countTotalRecords(PgQuery query, RawPets pets, boolean exactCount, ReplicaRouter.Reader reader) {
+    if (exactCount && isPastLastPage(query, pets.count)) {
+      return countAll(query, reader).map(count -> {
+        pets.totalRecords = count;
+        return pets;
+      });
+    }
+    if (exactCount) {
+      return Future.succeededFuture(pets);
+    }
+    return estimateCount(query, reader).map(estimate -> {
+      pets.totalRecords = estimate;
+      return pets;
+    });
+  }
+
+  private Future<RawPets> runProjectedQuery(PgQuery query, boolean exactCount, ReplicaRouter.Reader reader) {
+    return reader.select(rawSelect(query, exactCount)).map(resultSet -> {
+      RawPets pets = new RawPets();
+      pets.append(resultSet.getResults(), exactCount);
+      pets.finish(query);
+      return pets;
+    });
+  }
+
+  /**
+   * @return - select of the (projected) jsonb text, the id and, for exact counts, the number of matching rows
+   */
+  private String rawSelect(PgQuery query, boolean exactCount) {
+    return "SELECT " + query.getProjection() + "::text, _id::text"
+      + (exactCount ? ", count(*) OVER()" : "")
+      + " FROM " + fullTableName(query.getTable()) + query.getFilter();
+  }
+
   @Override
-  public void putPetsById(String id, String lang, Pet entity, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+  public void putPetsById(String id, String ifMatch, String lang, Pet entity, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> resultHandler, Context vertxContext) {
+    Handler<AsyncResult<Response>> trackedHandler = replicaRouter.afterWrite(okapiHeaders, metrics.track("putPetsById", resultHandler));
+    long scheduled = System.nanoTime();
     try {
-      vertxContext.runOnContext(v -> {
+      limiter.execute(vertxContext, trackedHandler, asyncResultHandler -> {
+        metrics.record("eventLoopDelay", System.nanoTime() - scheduled);
         entity.setId(id);
-        updatePet(entity)
+        if (ifMatch != null) {
+          metrics.time("updatePetIfMatch", () -> updatePetIfMatch(entity, ifMatch))
+            .setHandler(res -> {
+              if (res.failed()) {
+                asyncResultHandler.handle(Future.succeededFuture(PutPetsByIdResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+              } else if (res.result() == Response.Status.NOT_FOUND) {
+                asyncResultHandler.handle(Future.succeededFuture(PutPetsByIdResponse.respond404WithTextPlain(Response.Status.NOT_FOUND.getReasonPhrase())));
+              } else if (res.result() == Response.Status.PRECONDITION_FAILED) {
+                asyncResultHandler.handle(Future.succeededFuture(Response.status(Response.Status.PRECONDITION_FAILED)
+                  .header(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN)
+                  .entity(Response.Status.PRECONDITION_FAILED.getReasonPhrase())
+                  .build()));
+              } else {
+                asyncResultHandler.handle(Future.succeededFuture(PutPetsByIdResponse.respond204()));
+              }
+            });
+          return;
+        }
+        Future<Boolean> update;
+        if (Boolean.getBoolean(WRITE_BEHIND)) {
+          update = metrics.time("writeBehind", () -> tenantContext.getWriteBehind().update(entity));
+        } else {
+          update = metrics.time("updatePet", () -> updatePet(entity));
+        }
+        update
           .setHandler(res -> {
             if (res.failed()) {
               asyncResultHandler.handle(Future.succeededFuture(PutPetsByIdResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
-            } else if (res.result().getUpdated() == 0) {
+            } else if (!res.result()) {
               asyncResultHandler.handle(Future.succeededFuture(PutPetsByIdResponse.respond404WithTextPlain(Response.Status.NOT_FOUND.getReasonPhrase())));
             } else {
               asyncResultHandler.handle(Future.succeededFuture(PutPetsByIdResponse.respond204()));
@@ -111,40 +346,46 @@ public class PetsImpl implements Pets {
           });
       });
     } catch (Exception e) {
-      asyncResultHandler.handle(Future.succeededFuture(PutPetsByIdResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+      trackedHandler.handle(Future.succeededFuture(PutPetsByIdResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
     }
   }
 
   @Override
-  public void getPetsById(String id, String lang, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+  public void getPetsById(String id, String ifNoneMatch, String lang, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> resultHandler, Context vertxContext) {
+    Handler<AsyncResult<Response>> trackedHandler = metrics.track("getPetsById", resultHandler);
+    long scheduled = System.nanoTime();
     try {
-      vertxContext.runOnContext(v -> {
-        getPetById(HOMELESS_PETS_TABLE_NAME, id)
+      limiter.execute(vertxContext, trackedHandler, asyncResultHandler -> {
+        metrics.record("eventLoopDelay", System.nanoTime() - scheduled);
+        metrics.time("getPetById", () -> getPetById(HOMELESS_PETS_TABLE_NAME, id, replicaRouter.reader(okapiHeaders)))
           .setHandler(res -> {
             if (res.failed()) {
               asyncResultHandler.handle(Future.succeededFuture(GetPetsByIdResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
-            } else if (res.result().getResults().isEmpty()) {
+            } else if (res.result() == null) {
               asyncResultHandler.handle(Future.succeededFuture(GetPetsByIdResponse.respond404WithTextPlain(Response.Status.NOT_FOUND.getReasonPhrase())));
             } else {
-              asyncResultHandler.handle(Future.succeededFuture(GetPetsByIdResponse.respond200WithApplicationJson(res.result().getResults().get(0))));
+              asyncResultHandler.handle(Future.succeededFuture(conditionalPojo(res.result(), ifNoneMatch)));
             }
           });
       });
     } catch (Exception e) {
-      asyncResultHandler.handle(Future.succeededFuture(GetPetsByIdResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+      trackedHandler.handle(Future.succeededFuture(GetPetsByIdResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
     }
   }
 
   @Override
-  public void deletePetsById(String id, String lang, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+  public void deletePetsById(String id, String lang, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> resultHandler, Context vertxContext) {
+    Handler<AsyncResult<Response>> trackedHandler = replicaRouter.afterWrite(okapiHeaders, metrics.track("deletePetsById", resultHandler));
+    long scheduled = System.nanoTime();
     try {
-      vertxContext.runOnContext(v -> {
+      limiter.execute(vertxContext, trackedHandler, asyncResultHandler -> {
+        metrics.record("eventLoopDelay", System.nanoTime() - scheduled);
         Future.succeededFuture(id)
-          .compose(this::deletePetById)
+          .compose(petId -> metrics.time("deletePetById", () -> deletePetById(petId)))
           .setHandler(res -> {
             if (res.failed()) {
               asyncResultHandler.handle(Future.succeededFuture(DeletePetsByIdResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
-            } else if (res.result().getUpdated() == 0) {
+            } else if (!res.result()) {
               asyncResultHandler.handle(Future.succeededFuture(DeletePetsByIdResponse.respond404WithTextPlain(Response.Status.NOT_FOUND.getReasonPhrase())));
             } else {
               asyncResultHandler.handle(Future.succeededFuture(DeletePetsByIdResponse.respond204()));
@@ -152,46 +393,66 @@ public class PetsImpl implements Pets {
           });
       });
     } catch (Exception e) {
-      asyncResultHandler.handle(Future.succeededFuture(DeletePetsByIdResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+      trackedHandler.handle(Future.succeededFuture(DeletePetsByIdResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
     }
   }
 
   @Override
-  public void getPetsAdoptById(String id, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+  public void getPetsAdoptById(String id, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> resultHandler, Context vertxContext) {
+    Handler<AsyncResult<Response>> trackedHandler = metrics.track("getPetsAdoptById", resultHandler);
+    long scheduled = System.nanoTime();
     try {
-      vertxContext.runOnContext(v -> {
-        getPetById(ADOPTED_PETS_TABLE_NAME, id)
+      limiter.execute(vertxContext, trackedHandler, asyncResultHandler -> {
+        metrics.record("eventLoopDelay", System.nanoTime() - scheduled);
+        ReplicaRouter.Reader reader = replicaRouter.reader(okapiHeaders);
+        metrics.time("getPetById", () -> getPetById(ADOPTED_PETS_TABLE_NAME, id, reader))
+          .compose(pet -> getArchivedPetIfMissing(pet, id, reader))
           .setHandler(res -> {
             if (res.failed()) {
               asyncResultHandler.handle(Future.succeededFuture(GetPetsAdoptByIdResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
-            } else if (res.result().getResults().isEmpty()) {
+            } else if (res.result() == null) {
               asyncResultHandler.handle(Future.succeededFuture(GetPetsAdoptByIdResponse.respond404WithTextPlain(Response.Status.NOT_FOUND.getReasonPhrase())));
             } else {
-              asyncResultHandler.handle(Future.succeededFuture(GetPetsAdoptByIdResponse.respond200WithApplicationJson(res.result().getResults().get(0))));
+              asyncResultHandler.handle(Future.succeededFuture(GetPetsAdoptByIdResponse.respond200WithApplicationJson(res.result())));
             }
           });
       });
     } catch (Exception e) {
-      asyncResultHandler.handle(Future.succeededFuture(GetPetsAdoptByIdResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+      trackedHandler.handle(Future.succeededFuture(GetPetsAdoptByIdResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
     }
   }
 
   @Override
-  public void postPetsAdoptById(String id, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+  public void postPetsAdoptById(String id, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> resultHandler, Context vertxContext) {
+    Handler<AsyncResult<Response>> trackedHandler = replicaRouter.afterWrite(okapiHeaders, metrics.track("postPetsAdoptById", resultHandler));
+    long scheduled = System.nanoTime();
     try {
-      vertxContext.runOnContext(v -> {
+      limiter.execute(vertxContext, trackedHandler, asyncResultHandler -> {
+        metrics.record("eventLoopDelay", System.nanoTime() - scheduled);
         Pet entity = new Pet();
         entity.setId(id);
         PgTransaction<Pet> pgTransaction = new PgTransaction<>(entity);
-        Future.succeededFuture(pgTransaction)
-          .compose(this::startTx)
-          .compose(this::findPet)
-          .compose(this::vacateShelterPlace)
-          .compose(this::adoptPet)
-          .compose(this::endTx)
+        Future<PgTransaction<Pet>> adoption;
+        if (Boolean.getBoolean(ADOPT_IN_SINGLE_STATEMENT)) {
+          adoption = Future.succeededFuture(pgTransaction)
+            .compose(tx -> metrics.time("movePet", () -> movePet(tx)));
+        } else {
+          adoption = Future.succeededFuture(pgTransaction)
+            .compose(tx -> metrics.time("startTx", () -> startTx(tx)))
+            .compose(tx -> metrics.time("findPet", () -> findPet(tx)))
+            .compose(tx -> metrics.time("vacateShelterPlace", () -> vacateShelterPlace(tx)))
+            .compose(tx -> metrics.time("adoptPet", () -> adoptPet(tx)))
+            .compose(tx -> metrics.time("notifyAdoption", () -> notifyAdoption(tx, id)))
+            .compose(tx -> metrics.time("endTx", () -> endTx(tx)));
+        }
+        adoption
           .setHandler(res -> {
+            petCache.invalidate(HOMELESS_PETS_TABLE_NAME, id);
             if (res.failed()) {
               asyncResultHandler.handle(Future.succeededFuture(PostPetsAdoptByIdResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+            } else if (res.result().conflict != null) {
+              asyncResultHandler.handle(Future.succeededFuture(PostPetsAdoptByIdResponse.respond422WithTextPlain(
+                "The genus of pet " + res.result().conflict + " is adopted already")));
             } else if (res.result().entity == null) {
               asyncResultHandler.handle(Future.succeededFuture(PostPetsAdoptByIdResponse.respond404WithTextPlain(Response.Status.NOT_FOUND.getReasonPhrase())));
             } else {
@@ -200,12 +461,107 @@ public class PetsImpl implements Pets {
           });
       });
     } catch (Exception e) {
-      asyncResultHandler.handle(Future.succeededFuture(PostPetsAdoptByIdResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+      trackedHandler.handle(Future.succeededFuture(PostPetsAdoptByIdResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
     }
   }
 
-  private Future<PgTransaction<Pet>> startTx(PgTransaction<Pet> tx) {
-    Future<PgTransaction<Pet>> future = Future.future();
+  @Override
+  public void postPetsAdopt(PetIds entity, Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> resultHandler, Context vertxContext) {
+    Handler<AsyncResult<Response>> trackedHandler = replicaRouter.afterWrite(okapiHeaders, metrics.track("postPetsAdopt", resultHandler));
+    long scheduled = System.nanoTime();
+    try {
+      limiter.execute(vertxContext, trackedHandler, asyncResultHandler -> {
+        metrics.record("eventLoopDelay", System.nanoTime() - scheduled);
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(entity.getIds()));
+        if (ids.isEmpty()) {
+          asyncResultHandler.handle(Future.succeededFuture(PostPetsAdoptResponse.respond400WithTextPlain("No pet ids to adopt")));
+          return;
+        }
+        AdoptionResult result = new AdoptionResult();
+        result.setAdopted(new ArrayList<>());
+        result.setNotFound(new ArrayList<>());
+        result.setConflicts(new ArrayList<>());
+        // ids that are no UUID cannot be pets
+        List<String> uuids = new ArrayList<>();
+        ids.stream().map(PgParams::uuid).filter(Objects::nonNull).forEach(uuids::add);
+        Set<String> vacatedIds = new HashSet<>();
+        Future.succeededFuture(new PgTransaction<>(result))
+          .compose(tx -> metrics.time("startTx", () -> startTx(tx)))
+          .compose(tx -> metrics.time("movePets", () -> movePets(tx, uuids, vacatedIds)))
+          .compose(tx -> metrics.time("endTx", () -> endTx(tx)))
+          .setHandler(res -> {
+            vacatedIds.forEach(id -> petCache.invalidate(HOMELESS_PETS_TABLE_NAME, id));
+            if (res.failed()) {
+              asyncResultHandler.handle(Future.succeededFuture(PostPetsAdoptResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+            } else {
+              ids.stream()
+                .filter(id -> !vacatedIds.contains(PgParams.uuid(id)) && !result.getConflicts().contains(PgParams.uuid(id)))
+                .forEach(result.getNotFound()::add);
+              result.setTotalRecords(result.getAdopted().size());
+              asyncResultHandler.handle(Future.succeededFuture(PostPetsAdoptResponse.respond201WithApplicationJson(result)));
+            }
+          });
+      });
+    } catch (Exception e) {
+      trackedHandler.handle(Future.succeededFuture(PostPetsAdoptResponse.respond500WithTextPlain(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())));
+    }
+  }
+
+  /**
+   * Moves the pets in chunks of {@code ADOPT_CHUNK_SIZE} ids, one statement per chunk on the transaction
+   * connection. Pets whose genus is already adopted stay homeless and are reported as conflicts; any other
+   * failure rolls back all chunks.
+   */
+  private Future<PgTransaction<AdoptionResult>> movePets(PgTransaction<AdoptionResult> tx, List<String> ids, Set<String> vacatedIds) {
+    Future<PgTransaction<AdoptionResult>> chain = Future.succeededFuture(tx);
+    for (int from = 0; from < ids.size(); from += ADOPT_CHUNK_SIZE) {
+      List<String> chunk = ids.subList(from, Math.min(from + ADOPT_CHUNK_SIZE, ids.size()));
+      chain = chain.compose(t -> movePetsChunk(t, chunk, vacatedIds));
+    }
+    return chain;
+  }
+
+  private Future<PgTransaction<AdoptionResult>> movePetsChunk(PgTransaction<AdoptionResult> tx, List<String> chunk, Set<String> vacatedIds) {
+    Future<PgTransaction<AdoptionResult>> future = Future.future();
+    try {
+      SQLConnection connection = tx.sqlConnection.result();
+      connection.queryWithParams(moveSql(chunk.size()), new JsonArray(new ArrayList<>(chunk)), reply -> {
+        if (reply.failed()) {
+          pgClient.rollbackTx(tx.sqlConnection, res -> future.fail(reply.cause()));
+          return;
+        }
+        List<String> vacated = new ArrayList<>();
+        for (JsonArray row : reply.result().getResults()) {
+          String outcome = row.getString(3);
+          if (MOVE_VACATED.equals(outcome)) {
+            vacated.add(row.getString(0));
+          } else if (MOVE_CONFLICT.equals(outcome)) {
+            tx.entity.getConflicts().add(row.getString(0));
+          } else {
+            tx.entity.getAdopted().add(adoptedPet(row));
+          }
+        }
+        if (vacated.isEmpty()) {
+          future.complete(tx);
+          return;
+        }
+        connection.query(PetInvalidationBus.getInstance().notifySql(tenantId, HOMELESS_PETS_TABLE_NAME, vacated), notifyReply -> {
+          if (notifyReply.succeeded()) {
+            vacatedIds.addAll(vacated);
+            future.complete(tx);
+          } else {
+            pgClient.rollbackTx(tx.sqlConnection, res -> future.fail(notifyReply.cause()));
+          }
+        });
+      });
+    } catch (Exception e) {
+      pgClient.rollbackTx(tx.sqlConnection, reply -> future.fail(e));
+    }
+    return future;
+  }
+
+  private <T> Future<PgTransaction<T>> startTx(PgTransaction<T> tx) {
+    Future<PgTransaction<T>> future = Future.future();
     pgClient.startTx(sqlConnection -> {
       tx.sqlConnection = sqlConnection;
       future.complete(tx);
@@ -264,11 +620,19 @@ public class PetsImpl implements Pets {
         Pet entity = new Pet();
         entity.setGenus(tx.entity.getGenus());
         entity.setQuantity(tx.entity.getQuantity());
+        entity.setMetadata(adoptionMetadata());
         pgClient.save(tx.sqlConnection, ADOPTED_PETS_TABLE_NAME, entity, postReply -> {
           if (postReply.succeeded()) {
             entity.setId(postReply.result());
             tx.entity = entity;
             future.complete(tx);
+          } else if (isUniqueViolation(postReply.cause())) {
+            // the unique genus index of adopted_pets: the genus is adopted already
+            pgClient.rollbackTx(tx.sqlConnection, reply -> {
+              tx.conflict = tx.entity.getId();
+              tx.entity = null;
+              future.complete(tx);
+            });
           } else {
             pgClient.rollbackTx(tx.sqlConnection, reply -> future.fail(postReply.cause()));
           }
@@ -282,17 +646,141 @@ public class PetsImpl implements Pets {
     return future;
   }
 
-  private Future<PgTransaction<Pet>> endTx(PgTransaction<Pet> tx) {
+  /**
+   * Metadata of a pet created now, as RMB sets it on the entity of a single POST
+   */
+  private Metadata creationMetadata(Map<String, String> okapiHeaders) {
+    Date createdAt = new Date();
+    String userId = okapiHeaders.get(USER_ID_HEADER);
+    Metadata metadata = new Metadata();
+    metadata.setCreatedDate(createdAt);
+    metadata.setCreatedByUserId(userId);
+    metadata.setUpdatedDate(createdAt);
+    metadata.setUpdatedByUserId(userId);
+    return metadata;
+  }
+
+  /**
+   * The creation date of an adopted pet is the time of its adoption, as the adopted_at column the archive is partitioned by
+   */
+  private Metadata adoptionMetadata() {
+    Date adoptedAt = new Date();
+    Metadata metadata = new Metadata();
+    metadata.setCreatedDate(adoptedAt);
+    metadata.setUpdatedDate(adoptedAt);
+    return metadata;
+  }
+
+  private Future<PgTransaction<Pet>> notifyAdoption(PgTransaction<Pet> tx, String homelessId) {
     Future<PgTransaction<Pet>> future = Future.future();
+    if (tx.entity == null) {
+      future.complete(tx);
+      return future;
+    }
+    tx.sqlConnection.result().query(PetInvalidationBus.getInstance().notifySql(tenantId, HOMELESS_PETS_TABLE_NAME, homelessId), reply -> {
+      if (reply.succeeded()) {
+        future.complete(tx);
+      } else {
+        pgClient.rollbackTx(tx.sqlConnection, res -> future.fail(reply.cause()));
+      }
+    });
+    return future;
+  }
+
+  private <T> Future<PgTransaction<T>> endTx(PgTransaction<T> tx) {
+    Future<PgTransaction<T>> future = Future.future();
+    if (tx.conflict != null) {
+      future.complete(tx);
+      return future;
+    }
     pgClient.endTx(tx.sqlConnection, v -> {
+      // a failed commit leaves nothing adopted, the caller must not answer as if it had succeeded
+      if (v.failed()) {
+        future.fail(v.cause());
+      } else {
+        future.complete(tx);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Moves the pet from homeless to adopted pets with the single statement of {@link #moveSql},
+   * so the adoption takes one round trip instead of a transaction chain
+   */
+  private Future<PgTransaction<Pet>> movePet(PgTransaction<Pet> tx) {
+    Future<PgTransaction<Pet>> future = Future.future();
+    String id = PgParams.uuid(tx.entity.getId());
+    if (id == null) {
+      tx.entity = null;
+      future.complete(tx);
+      return future;
+    }
+    PgParams.query(pgClient, moveSql(1), new JsonArray().add(id)).setHandler(reply -> {
+      if (reply.failed()) {
+        future.fail(reply.cause());
+        return;
+      }
+      Pet adopted = null;
+      for (JsonArray row : reply.result().getResults()) {
+        if (MOVE_CONFLICT.equals(row.getString(3))) {
+          tx.conflict = tx.entity.getId();
+          tx.entity = null;
+          future.complete(tx);
+          return;
+        }
+        if (MOVE_ADOPTED.equals(row.getString(3))) {
+          adopted = adoptedPet(row);
+        }
+      }
+      if (adopted != null) {
+        PetInvalidationBus.getInstance().publish(pgClient, tenantId, HOMELESS_PETS_TABLE_NAME, id);
+      }
+      tx.entity = adopted;
       future.complete(tx);
     });
     return future;
   }
 
+  /**
+   * Builds the statement that moves the homeless pets with the given number of ids, bound as parameters,
+   * into adopted pets. A pet whose genus is adopted already, also in the archive, is left where it is. Rows are
+   * {@code (id, genus, quantity, outcome)}: every adopted pet as {@code (new id, genus, quantity, 'adopted')},
+   * every vacated homeless pet as {@code (homeless id, null, null, 'vacated')} and every pet left homeless
+   * as {@code (homeless id, null, null, 'conflict')}. The adopted pets are created now, in the date format
+   * of RMB's metadata.
+   */
+  private String moveSql(int ids) {
+    return "WITH requested AS (SELECT _id, jsonb, lower(f_unaccent(jsonb->>'genus')) AS genus FROM " + fullTableName(HOMELESS_PETS_TABLE_NAME)
+      + " WHERE _id IN (" + PgParams.uuids(ids) + ") FOR UPDATE),"
+      // the unique genus index of adopted_pets decides, also against concurrent adoptions
+      + " adopted AS (INSERT INTO " + fullTableName(ADOPTED_PETS_TABLE_NAME) + " (jsonb)"
+      + " SELECT jsonb_build_object('genus', jsonb->'genus', 'quantity', jsonb->'quantity', 'metadata', jsonb_build_object("
+      + "'createdDate', " + ADOPTED_AT + ", 'updatedDate', " + ADOPTED_AT + ")) FROM requested"
+      + " WHERE NOT EXISTS (SELECT 1 FROM " + fullTableName(ADOPTED_PETS_ARCHIVE_TABLE_NAME)
+      + " WHERE lower(f_unaccent(jsonb->>'genus')) = requested.genus)"
+      + " ON CONFLICT DO NOTHING RETURNING _id::text AS id, jsonb),"
+      // homeless pets have unique genera too, the genus finds the requested pet of an adopted one
+      + " vacated AS (DELETE FROM " + fullTableName(HOMELESS_PETS_TABLE_NAME)
+      + " WHERE _id IN (SELECT requested._id FROM requested JOIN adopted ON lower(f_unaccent(adopted.jsonb->>'genus')) = requested.genus)"
+      + " RETURNING _id)"
+      + " SELECT id, jsonb->>'genus', (jsonb->>'quantity')::int, '" + MOVE_ADOPTED + "' FROM adopted"
+      + " UNION ALL SELECT _id::text, NULL, NULL, '" + MOVE_VACATED + "' FROM vacated"
+      + " UNION ALL SELECT _id::text, NULL, NULL, '" + MOVE_CONFLICT + "' FROM requested WHERE _id NOT IN (SELECT _id FROM vacated)";
+  }
+
+  private Pet adoptedPet(JsonArray row) {
+    Pet entity = new Pet();
+    entity.setId(row.getString(0));
+    entity.setGenus(row.getString(1));
+    entity.setQuantity(row.getInteger(2));
+    return entity;
+  }
+
   private Future<Pet> savePet(Pet pet) {
     Future<Pet> future = Future.future();
     try {
+      // a new pet cannot be cached anywhere yet, there is nothing to invalidate
       pgClient.save(HOMELESS_PETS_TABLE_NAME, pet.getId(), pet, postReply -> {
         future.complete(pet);
       });
@@ -302,36 +790,237 @@ public class PetsImpl implements Pets {
     return future;
   }
 
-  private Future<UpdateResult> updatePet(Pet pet) {
-    Future<UpdateResult> future = Future.future();
+  /**
+   * Inserts pets in chunks of {@code BATCH_CHUNK_SIZE} rows, one multi-row INSERT per chunk.
+   * A failed chunk is reported per item and does not stop the following chunks.
+   */
+  private Future<PetsBatchResult> savePets(List<Pet> pets) {
+    PetsBatchResult result = new PetsBatchResult();
+    result.setItems(new ArrayList<>());
+    Future<Void> chain = Future.succeededFuture();
+    for (int from = 0; from < pets.size(); from += BATCH_CHUNK_SIZE) {
+      List<Pet> chunk = pets.subList(from, Math.min(from + BATCH_CHUNK_SIZE, pets.size()));
+      chain = chain.compose(v -> savePetsChunk(chunk, result));
+    }
+    return chain.map(v -> {
+      result.setCreated(countItems(result, PetBatchItem.Status.CREATED));
+      result.setConflicts(countItems(result, PetBatchItem.Status.CONFLICT));
+      result.setFailed(countItems(result, PetBatchItem.Status.FAILED));
+      result.setTotalRecords(result.getItems().size());
+      return result;
+    });
+  }
+
+  /**
+   * Only the unique genus index is a conflict, the ids are generated: a pet whose genus exists already,
+   * or repeats a genus earlier in the batch, is skipped, any other violation fails the chunk
+   */
+  private Future<Void> savePetsChunk(List<Pet> chunk, PetsBatchResult result) {
+    Future<Void> future = Future.future();
     try {
-      Criteria idCrit = constructCriteria("'id'", pet.getId());
-      pgClient.update(HOMELESS_PETS_TABLE_NAME, pet, new Criterion(idCrit), true, future.completer());
+      StringBuilder sql = new StringBuilder("INSERT INTO ")
+        .append(fullTableName(HOMELESS_PETS_TABLE_NAME))
+        .append(" (_id, jsonb) VALUES ");
+      JsonArray params = new JsonArray();
+      for (int i = 0; i < chunk.size(); i++) {
+        Pet pet = chunk.get(i);
+        sql.append(i == 0 ? "" : ", ").append("(?::uuid, ?::jsonb)");
+        params.add(pet.getId()).add(PostgresClient.pojo2json(pet));
+      }
+      sql.append(" ON CONFLICT ((lower(f_unaccent(jsonb->>'genus')))) DO NOTHING RETURNING _id::text");
+      PgParams.query(pgClient, sql.toString(), params).setHandler(reply -> {
+        if (reply.succeeded()) {
+          Set<String> insertedIds = new HashSet<>();
+          for (JsonArray row : reply.result().getResults()) {
+            insertedIds.add(row.getString(0));
+          }
+          for (Pet pet : chunk) {
+            if (insertedIds.contains(pet.getId())) {
+              result.getItems().add(batchItem(pet, PetBatchItem.Status.CREATED, null));
+            } else {
+              result.getItems().add(batchItem(pet, PetBatchItem.Status.CONFLICT,
+                "A pet with genus " + pet.getGenus() + " exists already (unique index " + HOMELESS_PETS_GENUS_INDEX + ")"));
+            }
+          }
+        } else {
+          chunk.forEach(pet -> result.getItems().add(batchItem(pet, PetBatchItem.Status.FAILED, reply.cause().getMessage())));
+        }
+        future.complete();
+      });
     } catch (Exception e) {
-      future.fail(e);
+      chunk.forEach(pet -> result.getItems().add(batchItem(pet, PetBatchItem.Status.FAILED, e.getMessage())));
+      future.complete();
     }
     return future;
   }
 
-  private Future<Results<Pet>> getPetById(String table, String id) {
-    Future<Results<Pet>> future = Future.future();
-    try {
-      Criteria idCrit = constructCriteria("'id'", id);
-      pgClient.get(table, Pet.class, new Criterion(idCrit), true, false, future.completer());
-    } catch (Exception e) {
-      future.fail(e);
+  private PetBatchItem batchItem(Pet pet, PetBatchItem.Status status, String message) {
+    PetBatchItem item = new PetBatchItem();
+    item.setId(pet.getId());
+    item.setGenus(pet.getGenus());
+    item.setStatus(status);
+    item.setMessage(message);
+    return item;
+  }
+
+  private int countItems(PetsBatchResult result, PetBatchItem.Status status) {
+    return (int) result.getItems().stream().filter(item -> item.getStatus() == status).count();
+  }
+
+  /**
+   * Replaces the pet only if its ETag still matches. The pet is read by primary key and replaced by an update
+   * that also requires the jsonb that was read, so a change in between fails the precondition without a lock.
+   *
+   * @return - future of NO_CONTENT if the pet was replaced, NOT_FOUND or PRECONDITION_FAILED otherwise
+   */
+  private Future<Response.Status> updatePetIfMatch(Pet pet, String ifMatch) {
+    String id = PgParams.uuid(pet.getId());
+    if (id == null) {
+      return Future.succeededFuture(Response.Status.NOT_FOUND);
     }
+    String table = fullTableName(HOMELESS_PETS_TABLE_NAME);
+    return PgParams.query(pgClient, "SELECT jsonb::text FROM " + table + " WHERE _id = ?::uuid", new JsonArray().add(id))
+      .compose(read -> {
+        if (read.getResults().isEmpty()) {
+          return Future.succeededFuture(Response.Status.NOT_FOUND);
+        }
+        String current = read.getResults().get(0).getString(0);
+        try {
+          if (!ETags.matchesStrongly(ifMatch, ETags.of(new JsonObject(current).mapTo(Pet.class)))) {
+            return Future.succeededFuture(Response.Status.PRECONDITION_FAILED);
+          }
+          String updateSql = "UPDATE " + table + " SET jsonb = ?::jsonb WHERE _id = ?::uuid AND jsonb = ?::jsonb RETURNING _id";
+          return PgParams.query(pgClient, updateSql, new JsonArray().add(PostgresClient.pojo2json(pet)).add(id).add(current))
+            .map(updated -> {
+              if (updated.getResults().isEmpty()) {
+                return Response.Status.PRECONDITION_FAILED;
+              }
+              evictPet(HOMELESS_PETS_TABLE_NAME, pet.getId());
+              return Response.Status.NO_CONTENT;
+            });
+        } catch (Exception e) {
+          return Future.failedFuture(e);
+        }
+      });
+  }
+
+  private Future<Boolean> updatePet(Pet pet) {
+    Future<Boolean> future = Future.future();
+    petRepository.update(HOMELESS_PETS_TABLE_NAME, pet).setHandler(reply -> {
+      evictPetIfChanged(HOMELESS_PETS_TABLE_NAME, pet.getId(), reply);
+      future.handle(reply);
+    });
+    return future;
+  }
+
+  /**
+   * Reads the pet through the tenant's pet cache; misses are loaded by the tenant's pet repository,
+   * which batches or pipelines them with the concurrent lookups of other requests, or by the read replica
+   *
+   * @return - future of the pet, completed with null if there is no pet with the id
+   */
+  private Future<Pet> getPetById(String table, String id, ReplicaRouter.Reader reader) {
+    Pet cached = petCache.get(table, id);
+    if (cached != null) {
+      return Future.succeededFuture(cached);
+    }
+    if (reader.isReplica()) {
+      // not cached: a replica that is behind would put a stale pet into the cache after its invalidation
+      String uuid = PgParams.uuid(id);
+      if (uuid == null) {
+        return Future.succeededFuture(null);
+      }
+      return reader.select("SELECT jsonb::text FROM " + fullTableName(table) + " WHERE _id = ?::uuid", new JsonArray().add(uuid))
+        .map(resultSet -> resultSet.getResults().isEmpty() ? null : new JsonObject(resultSet.getResults().get(0).getString(0)).mapTo(Pet.class));
+    }
+    long generation = petCache.generation();
+    return petRepository.findById(table, id).map(pet -> {
+      if (pet != null) {
+        petCache.put(table, id, pet, generation);
+      }
+      return pet;
+    });
+  }
+
+  /**
+   * Looks up an adoption that is not in adopted_pets any more in the partitions of the archive; archived
+   * adoptions are not cached, they are rarely read
+   */
+  private Future<Pet> getArchivedPetIfMissing(Pet pet, String id, ReplicaRouter.Reader reader) {
+    if (pet != null) {
+      return Future.succeededFuture(pet);
+    }
+    String uuid = PgParams.uuid(id);
+    if (uuid == null) {
+      return Future.succeededFuture(null);
+    }
+    String sql = "SELECT jsonb::text FROM " + fullTableName(ADOPTED_PETS_ARCHIVE_TABLE_NAME) + " WHERE _id = ?::uuid LIMIT 1";
+    return metrics.time("getArchivedPetById", () -> reader.select(sql, new JsonArray().add(uuid)))
+      .map(resultSet -> resultSet.getResults().isEmpty() ? null : new JsonObject(resultSet.getResults().get(0).getString(0)).mapTo(Pet.class));
+  }
+
+  private Future<Boolean> deletePetById(String id) {
+    Future<Boolean> future = Future.future();
+    petRepository.delete(HOMELESS_PETS_TABLE_NAME, id).setHandler(reply -> {
+      evictPetIfChanged(HOMELESS_PETS_TABLE_NAME, id, reply);
+      future.handle(reply);
+    });
     return future;
   }
 
-  private Future<UpdateResult> deletePetById(String id) {
-    Future<UpdateResult> future = Future.future();
+  /**
+   * Evicts the pet from the local cache and notifies the other module instances to do the same
+   */
+  private void evictPet(String table, String id) {
+    petCache.invalidate(table, id);
+    PetInvalidationBus.getInstance().publish(pgClient, tenantId, table, id);
+  }
+
+  /**
+   * Evicts the pet only if the write succeeded and changed a row: a failed write or one that matched
+   * no pet left every cache valid
+   */
+  private void evictPetIfChanged(String table, String id, AsyncResult<Boolean> reply) {
+    if (reply.succeeded() && reply.result()) {
+      evictPet(table, id);
+    }
+  }
+
+  /**
+   * Answers with the json and its ETag, or with 304 Not Modified when the client already has this version
+   */
+  private Response conditionalJson(String json, String ifNoneMatch) {
+    String etag = ETags.of(json);
+    if (ETags.matches(ifNoneMatch, etag)) {
+      return Response.status(Response.Status.NOT_MODIFIED).header(HttpHeaders.ETAG, etag).build();
+    }
+    return Response.status(Response.Status.OK)
+      .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+      .header(HttpHeaders.ETAG, etag)
+      .entity(json)
+      .build();
+  }
+
+  private Response conditionalPojo(Object pojo, String ifNoneMatch) {
     try {
-      pgClient.delete(HOMELESS_PETS_TABLE_NAME, id, future.completer());
+      return conditionalJson(PostgresClient.pojo2json(pojo), ifNoneMatch);
     } catch (Exception e) {
-      future.fail(e);
+      return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+        .header(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN)
+        .entity(Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase())
+        .build();
     }
-    return future;
+  }
+
+  private String fullTableName(String table) {
+    return PostgresClient.convertToPsqlStandard(tenantId) + "." + table;
+  }
+
+  /**
+   * Postgres reports a unique index violation with SQLSTATE 23505, which the async driver only keeps in the message
+   */
+  private static boolean isUniqueViolation(Throwable cause) {
+    return cause != null && String.valueOf(cause.getMessage()).contains("23505");
   }
 
   /**
@@ -349,4 +1038,42 @@ public class PetsImpl implements Pets {
     return criteria;
   }
 
+  /**
+   * Pets collection assembled from the jsonb text of the rows
+   */
+  private static class RawPets {
+    private final StringBuilder json = new StringBuilder("{\"pets\":[");
+    private int count;
+    private int totalRecords;
+    private String lastId;
+    private String nextCursor;
+
+    private void append(List<JsonArray> rows, boolean exactCount) {
+      for (JsonArray row : rows) {
+        if (count++ > 0) {
+          json.append(',');
+        }
+        json.append(row.getString(0));
+        lastId = row.getString(1);
+        if (exactCount) {
+          totalRecords = row.getLong(2).intValue();
+        }
+      }
+    }
+
+    private void finish(PgQuery query) {
+      if (query.isKeyset() && count > 0 && count == query.getLimit()) {
+        nextCursor = PgCursor.after(lastId).encode();
+      }
+    }
+
+    private String toJson() {
+      json.append("],\"totalRecords\":").append(Math.max(totalRecords, count));
+      if (nextCursor != null) {
+        json.append(",\"nextCursor\":\"").append(nextCursor).append('"');
+      }
+      return json.append('}').toString();
+    }
+  }
+
 }
@@ -0,0 +1,223 @@
+package org.folio.rest.utils;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-tenant limit on the requests that run at the same time, off unless {@code pets.limiter.enabled} is true.
+ * Requests over the limit wait in a bounded FIFO queue; when the queue is full they are shed with 429, once
+ * they waited for the queue timeout with 503, both with a Retry-After estimate. A task that throws is answered
+ * with 500 and frees its slot. The limit adapts to latency: it shrinks while requests take
+ * longer than {@code pets.limiter.tolerance} times the lowest recent latency and grows while they do not.
+ */
+public class ConcurrencyLimiter {
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("pets.limiter.enabled", "false"));
+    private static final int INITIAL_LIMIT = Integer.getInteger("pets.limiter.initialLimit", 20);
+    private static final int MIN_LIMIT = Integer.getInteger("pets.limiter.minLimit", 2);
+    private static final int MAX_LIMIT = Integer.getInteger("pets.limiter.maxLimit", 200);
+    private static final int MAX_QUEUE = Integer.getInteger("pets.limiter.maxQueue", 100);
+    private static final long QUEUE_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("pets.limiter.queueTimeoutMillis", 1000L));
+    private static final double TOLERANCE = Double.parseDouble(System.getProperty("pets.limiter.tolerance", "2.0"));
+    private static final double SMOOTHING = 0.2;
+    private static final int MIN_RTT_RESET_SAMPLES = 1000;
+    private static final Map<String, ConcurrencyLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    private final Deque<Waiter> queue = new ArrayDeque<>();
+    private double limit = INITIAL_LIMIT;
+    private int inFlight;
+    private long minRttNanos;
+    private double avgRttNanos;
+    private long samples;
+    private final AtomicLong shedQueueFull = new AtomicLong();
+    private final AtomicLong shedQueueTimeout = new AtomicLong();
+
+    public static ConcurrencyLimiter forTenant(String tenantId) {
+        return LIMITERS.computeIfAbsent(tenantId, tenant -> new ConcurrencyLimiter());
+    }
+
+    public static Map<String, ConcurrencyLimiter> all() {
+        return LIMITERS;
+    }
+
+    /**
+     * Runs the task on the context once the request is admitted. The task answers through the handler
+     * it is given, which frees the slot of the request on the first response.
+     *
+     * @param context         - context to run the task on
+     * @param responseHandler - handler of the request, also used to answer shed requests
+     * @param task            - handler body
+     */
+    public void execute(Context context, Handler<AsyncResult<Response>> responseHandler, Handler<Handler<AsyncResult<Response>>> task) {
+        if (!ENABLED) {
+            context.runOnContext(v -> task.handle(responseHandler));
+            return;
+        }
+        Waiter waiter = new Waiter(context, responseHandler, task);
+        boolean admitted;
+        synchronized (this) {
+            admitted = inFlight < (int) limit;
+            if (admitted) {
+                inFlight++;
+            } else if (queue.size() < MAX_QUEUE) {
+                // the timer cannot expire the waiter before it is queued, expire() takes the same lock
+                waiter.timerId = context.owner().setTimer(TimeUnit.NANOSECONDS.toMillis(QUEUE_TIMEOUT_NANOS), id -> expire(waiter));
+                queue.addLast(waiter);
+                return;
+            }
+        }
+        if (admitted) {
+            run(waiter);
+        } else {
+            shedQueueFull.incrementAndGet();
+            shed(waiter, Response.Status.TOO_MANY_REQUESTS);
+        }
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    public int getMaxQueue() {
+        return MAX_QUEUE;
+    }
+
+    public long getShedQueueFull() {
+        return shedQueueFull.get();
+    }
+
+    public long getShedQueueTimeout() {
+        return shedQueueTimeout.get();
+    }
+
+    private void run(Waiter waiter) {
+        long start = System.nanoTime();
+        AtomicBoolean released = new AtomicBoolean();
+        Handler<AsyncResult<Response>> releasing = res -> {
+            if (released.compareAndSet(false, true)) {
+                release(System.nanoTime() - start);
+            }
+            waiter.responseHandler.handle(res);
+        };
+        waiter.context.runOnContext(v -> {
+            try {
+                waiter.task.handle(releasing);
+            } catch (Exception e) {
+                if (!released.get()) {
+                    releasing.handle(Future.succeededFuture(textResponse(Response.Status.INTERNAL_SERVER_ERROR).build()));
+                }
+            }
+        });
+    }
+
+    /**
+     * Sheds the request when its queue timeout fires while it is still waiting
+     */
+    private void expire(Waiter waiter) {
+        synchronized (this) {
+            if (!queue.remove(waiter)) {
+                return;
+            }
+        }
+        shedQueueTimeout.incrementAndGet();
+        shed(waiter, Response.Status.SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Frees the slot, adapts the limit to the latency of the finished request and admits queued requests
+     * up to the new limit; requests that waited longer than the queue timeout are shed instead
+     */
+    private void release(long rttNanos) {
+        Deque<Waiter> admitted = new ArrayDeque<>();
+        Deque<Waiter> expired = new ArrayDeque<>();
+        synchronized (this) {
+            inFlight--;
+            adapt(rttNanos);
+            long now = System.nanoTime();
+            while (!queue.isEmpty() && inFlight < (int) limit) {
+                Waiter waiter = queue.pollFirst();
+                if (now - waiter.enqueuedAt > QUEUE_TIMEOUT_NANOS) {
+                    expired.add(waiter);
+                } else {
+                    inFlight++;
+                    admitted.add(waiter);
+                }
+            }
+        }
+        admitted.forEach(waiter -> {
+            waiter.context.owner().cancelTimer(waiter.timerId);
+            run(waiter);
+        });
+        expired.forEach(waiter -> {
+            waiter.context.owner().cancelTimer(waiter.timerId);
+            shedQueueTimeout.incrementAndGet();
+            shed(waiter, Response.Status.SERVICE_UNAVAILABLE);
+        });
+    }
+
+    private void adapt(long rttNanos) {
+        if (++samples % MIN_RTT_RESET_SAMPLES == 0 || minRttNanos == 0 || rttNanos < minRttNanos) {
+            minRttNanos = Math.max(rttNanos, 1);
+        }
+        avgRttNanos = avgRttNanos == 0 ? rttNanos : avgRttNanos * (1 - SMOOTHING) + rttNanos * SMOOTHING;
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * minRttNanos / Math.max(rttNanos, 1)));
+        double target = limit * gradient + Math.sqrt(limit);
+        if (target > limit && inFlight < limit / 2) {
+            // not using the current limit, so the latency says nothing about a higher one
+            return;
+        }
+        limit = Math.max(MIN_LIMIT, Math.min(MAX_LIMIT, limit * (1 - SMOOTHING) + target * SMOOTHING));
+    }
+
+    private void shed(Waiter waiter, Response.Status status) {
+        long retryAfterSeconds;
+        synchronized (this) {
+            double drainNanos = (queue.size() + 1) * avgRttNanos / Math.max(1, (int) limit);
+            retryAfterSeconds = Math.max(1, (long) Math.ceil(drainNanos / TimeUnit.SECONDS.toNanos(1)));
+        }
+        Response response = textResponse(status)
+            .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+            .build();
+        waiter.context.runOnContext(v -> waiter.responseHandler.handle(Future.succeededFuture(response)));
+    }
+
+    private static Response.ResponseBuilder textResponse(Response.Status status) {
+        return Response.status(status)
+            .header(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN)
+            .entity(status.getReasonPhrase());
+    }
+
+    private static class Waiter {
+        private final Context context;
+        private final Handler<AsyncResult<Response>> responseHandler;
+        private final Handler<Handler<AsyncResult<Response>>> task;
+        private final long enqueuedAt = System.nanoTime();
+        private long timerId;
+
+        private Waiter(Context context, Handler<AsyncResult<Response>> responseHandler, Handler<Handler<AsyncResult<Response>>> task) {
+            this.context = context;
+            this.responseHandler = responseHandler;
+            this.task = task;
+        }
+    }
+}
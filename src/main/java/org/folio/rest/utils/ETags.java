@@ -0,0 +1,72 @@
+package org.folio.rest.utils;
+
+import org.folio.rest.persist.PostgresClient;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Strong entity tags computed from the json representation, so that they change with every change
+ * of the content no matter which path wrote it
+ */
+public final class ETags {
+
+    private ETags() {
+    }
+
+    public static String of(Object pojo) throws Exception {
+        return of(PostgresClient.pojo2json(pojo));
+    }
+
+    public static String of(String json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(json.getBytes(StandardCharsets.UTF_8));
+            return '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + '"';
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Weak comparison, for If-None-Match (RFC 7232 section 3.2)
+     *
+     * @param header - value of an If-None-Match header, may be null
+     * @param etag   - current entity tag
+     * @return - true if the header lists the tag, weak or not, or is {@code *}
+     */
+    public static boolean matches(String header, String etag) {
+        return matches(header, etag, false);
+    }
+
+    /**
+     * Strong comparison, for If-Match (RFC 7232 section 3.1): a weak tag never matches
+     *
+     * @param header - value of an If-Match header, may be null
+     * @param etag   - current entity tag
+     * @return - true if the header lists the tag or is {@code *}
+     */
+    public static boolean matchesStrongly(String header, String etag) {
+        return matches(header, etag, true);
+    }
+
+    private static boolean matches(String header, String etag, boolean strong) {
+        if (header == null) {
+            return false;
+        }
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                if (strong) {
+                    continue;
+                }
+                tag = tag.substring(2);
+            }
+            if ("*".equals(tag) || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,238 @@
+package org.folio.rest.utils;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import javax.ws.rs.core.Response;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Latency histograms of the handlers and of their private stages, request counters and in-flight gauges
+ * of one tenant, rendered in the Prometheus text exposition format with the other series of that tenant.
+ */
+public class LatencyMetrics {
+    private static final Map<String, LatencyMetrics> METRICS = new ConcurrentHashMap<>();
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final String tenantId;
+    private final Map<String, Timer> endpointTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> inFlight = new ConcurrentHashMap<>();
+
+    public static LatencyMetrics forTenant(String tenantId) {
+        return METRICS.computeIfAbsent(tenantId, LatencyMetrics::new);
+    }
+
+    private LatencyMetrics(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    /**
+     * Wraps the response handler of a request so that the first response records the endpoint latency,
+     * counts the request by tenant and status class and releases the in-flight gauge
+     */
+    public Handler<AsyncResult<Response>> track(String endpoint, Handler<AsyncResult<Response>> handler) {
+        long start = System.nanoTime();
+        String tenantKey = labels("endpoint", endpoint, "tenant", tenantId);
+        AtomicLong gauge = inFlight.computeIfAbsent(tenantKey, k -> new AtomicLong());
+        gauge.incrementAndGet();
+        AtomicBoolean done = new AtomicBoolean();
+        return res -> {
+            if (done.compareAndSet(false, true)) {
+                endpointTimers.computeIfAbsent(endpoint, k -> new Timer()).record(System.nanoTime() - start);
+                gauge.decrementAndGet();
+                String status = res.succeeded() ? res.result().getStatus() / 100 + "xx" : "5xx";
+                requests.computeIfAbsent(labels("endpoint", endpoint, "tenant", tenantId, "status", status), k -> new LongAdder()).increment();
+            }
+            handler.handle(res);
+        };
+    }
+
+    /**
+     * Times an asynchronous stage from the call until its future completes
+     */
+    public <T> Future<T> time(String stage, Supplier<Future<T>> operation) {
+        long start = System.nanoTime();
+        Timer timer = stageTimers.computeIfAbsent(stage, k -> new Timer());
+        Future<T> future = Future.future();
+        try {
+            operation.get().setHandler(res -> {
+                timer.record(System.nanoTime() - start);
+                future.handle(res);
+            });
+        } catch (Exception e) {
+            timer.record(System.nanoTime() - start);
+            future.fail(e);
+        }
+        return future;
+    }
+
+    /**
+     * Records a duration measured elsewhere, for stages that do not complete through a single future
+     */
+    public void record(String stage, long nanos) {
+        stageTimers.computeIfAbsent(stage, k -> new Timer()).record(nanos);
+    }
+
+    /**
+     * Series labelled with a tenant are rendered for this tenant only; the CQL cache counters are shared
+     * by all tenants and carry no tenant label.
+     */
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        writeSummary(sb, "pets_request_duration_seconds", "Latency of PetsImpl handlers by tenant", "endpoint", endpointTimers);
+        writeSummary(sb, "pets_stage_duration_seconds", "Latency of PetsImpl stages by tenant", "stage", stageTimers);
+
+        sb.append("# HELP pets_requests_total Requests handled by tenant and status class\n");
+        sb.append("# TYPE pets_requests_total counter\n");
+        new TreeMap<>(requests).forEach((labels, count) ->
+            sb.append("pets_requests_total{").append(labels).append("} ").append(count.sum()).append('\n'));
+
+        sb.append("# HELP pets_requests_in_flight Requests waiting for a response\n");
+        sb.append("# TYPE pets_requests_in_flight gauge\n");
+        new TreeMap<>(inFlight).forEach((labels, gauge) ->
+            sb.append("pets_requests_in_flight{").append(labels).append("} ").append(gauge.get()).append('\n'));
+
+        PgQueryCache queryCache = PgQueryCache.getInstance();
+        writeCounter(sb, "pets_cql_cache_hits_total", "CQL translations served from cache", "", queryCache.getHits());
+        writeCounter(sb, "pets_cql_cache_misses_total", "CQL translations compiled", "", queryCache.getMisses());
+
+        sb.append("# HELP pets_cache_events_total Pet cache hits, misses and removals by tenant\n");
+        sb.append("# TYPE pets_cache_events_total counter\n");
+        forTenant(PetCache.all(), tenantId, (tenant, cache) -> {
+            appendSample(sb, "pets_cache_events_total", labels("tenant", tenant, "event", "hit"), cache.getHits());
+            appendSample(sb, "pets_cache_events_total", labels("tenant", tenant, "event", "miss"), cache.getMisses());
+            appendSample(sb, "pets_cache_events_total", labels("tenant", tenant, "event", "eviction"), cache.getEvictions());
+            appendSample(sb, "pets_cache_events_total", labels("tenant", tenant, "event", "expiration"), cache.getExpirations());
+            appendSample(sb, "pets_cache_events_total", labels("tenant", tenant, "event", "invalidation"), cache.getInvalidations());
+        });
+
+        sb.append("# HELP pets_loader_events_total Pet lookups by id batched into one query by tenant\n");
+        sb.append("# TYPE pets_loader_events_total counter\n");
+        forTenant(PetLoader.all(), tenantId, (tenant, loader) -> {
+            appendSample(sb, "pets_loader_events_total", labels("tenant", tenant, "event", "batch"), loader.getBatches());
+            appendSample(sb, "pets_loader_events_total", labels("tenant", tenant, "event", "loaded_id"), loader.getLoadedIds());
+            appendSample(sb, "pets_loader_events_total", labels("tenant", tenant, "event", "coalesced"), loader.getCoalesced());
+        });
+
+        sb.append("# HELP pets_limiter_concurrency Adaptive concurrency limit, running and queued requests by tenant\n");
+        sb.append("# TYPE pets_limiter_concurrency gauge\n");
+        forTenant(ConcurrencyLimiter.all(), tenantId, (tenant, limiter) -> {
+            appendSample(sb, "pets_limiter_concurrency", labels("tenant", tenant, "state", "limit"), limiter.getLimit());
+            appendSample(sb, "pets_limiter_concurrency", labels("tenant", tenant, "state", "in_flight"), limiter.getInFlight());
+            appendSample(sb, "pets_limiter_concurrency", labels("tenant", tenant, "state", "queued"), limiter.getQueued());
+        });
+        sb.append("# HELP pets_limiter_shed_total Requests shed by tenant and reason\n");
+        sb.append("# TYPE pets_limiter_shed_total counter\n");
+        forTenant(ConcurrencyLimiter.all(), tenantId, (tenant, limiter) -> {
+            appendSample(sb, "pets_limiter_shed_total", labels("tenant", tenant, "reason", "queue_full"), limiter.getShedQueueFull());
+            appendSample(sb, "pets_limiter_shed_total", labels("tenant", tenant, "reason", "queue_timeout"), limiter.getShedQueueTimeout());
+        });
+
+        sb.append("# HELP pets_write_behind_events_total Queued, coalesced and flushed pet updates by tenant\n");
+        sb.append("# TYPE pets_write_behind_events_total counter\n");
+        forTenant(TenantContext.all(), tenantId, (tenant, context) -> {
+            PetWriteBehind writeBehind = context.getWriteBehind();
+            appendSample(sb, "pets_write_behind_events_total", labels("tenant", tenant, "event", "write"), writeBehind.getWrites());
+            appendSample(sb, "pets_write_behind_events_total", labels("tenant", tenant, "event", "coalesced"), writeBehind.getCoalesced());
+            appendSample(sb, "pets_write_behind_events_total", labels("tenant", tenant, "event", "flush"), writeBehind.getFlushes());
+        });
+
+        sb.append("# HELP pets_replica_reads_total Selects by tenant and database that answered, fallback for failed replica reads\n");
+        sb.append("# TYPE pets_replica_reads_total counter\n");
+        forTenant(TenantContext.all(), tenantId, (tenant, context) -> {
+            ReplicaRouter router = context.getReplicaRouter();
+            appendSample(sb, "pets_replica_reads_total", labels("tenant", tenant, "target", "replica"), router.getReplicaReads());
+            appendSample(sb, "pets_replica_reads_total", labels("tenant", tenant, "target", "primary"), router.getPrimaryReads());
+            appendSample(sb, "pets_replica_reads_total", labels("tenant", tenant, "target", "fallback"), router.getFallbacks());
+        });
+        sb.append("# HELP pets_replica_lag_seconds Last measured replica lag by tenant, +Inf while the replica is unreachable\n");
+        sb.append("# TYPE pets_replica_lag_seconds gauge\n");
+        forTenant(TenantContext.all(), tenantId, (tenant, context) -> {
+            ReplicaRouter router = context.getReplicaRouter();
+            if (router.isEnabled()) {
+                long lagMillis = router.getLagMillis();
+                appendSample(sb, "pets_replica_lag_seconds", labels("tenant", tenant),
+                    lagMillis == Long.MAX_VALUE ? "+Inf" : String.valueOf(lagMillis / 1000.0));
+            }
+        });
+        return sb.toString();
+    }
+
+    private static <T> void forTenant(Map<String, T> byTenant, String tenantId, BiConsumer<String, T> action) {
+        T value = byTenant.get(tenantId);
+        if (value != null) {
+            action.accept(tenantId, value);
+        }
+    }
+
+    private void writeSummary(StringBuilder sb, String name, String help, String label, Map<String, Timer> timers) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" summary\n");
+        new TreeMap<>(timers).forEach((key, timer) -> {
+            Histogram histogram = timer.histogram.copy();
+            for (double quantile : QUANTILES) {
+                appendSample(sb, name, labels(label, key, "tenant", tenantId, "quantile", String.valueOf(quantile)),
+                    seconds(histogram.getValueAtPercentile(quantile * 100)));
+            }
+            appendSample(sb, name + "_sum", labels(label, key, "tenant", tenantId), seconds(timer.sumMicros.sum()));
+            appendSample(sb, name + "_count", labels(label, key, "tenant", tenantId), histogram.getTotalCount());
+        });
+    }
+
+    private static void writeCounter(StringBuilder sb, String name, String help, String labels, long value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" counter\n");
+        appendSample(sb, name, labels, value);
+    }
+
+    private static void appendSample(StringBuilder sb, String name, String labels, Object value) {
+        sb.append(name);
+        if (!labels.isEmpty()) {
+            sb.append('{').append(labels).append('}');
+        }
+        sb.append(' ').append(value).append('\n');
+    }
+
+    private static String labels(String... namesAndValues) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            String value = namesAndValues[i + 1] == null ? "" : namesAndValues[i + 1];
+            sb.append(namesAndValues[i]).append("=\"")
+                .append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                .append('"');
+        }
+        return sb.toString();
+    }
+
+    private static double seconds(long micros) {
+        return micros / 1_000_000d;
+    }
+
+    private static class Timer {
+        private final Histogram histogram = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+        private final LongAdder sumMicros = new LongAdder();
+
+        private void record(long nanos) {
+            long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_TRACKABLE_MICROS);
+            histogram.recordValue(micros);
+            sumMicros.add(micros);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.folio.rest.utils;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import org.folio.rest.persist.PostgresClient;
+
+/**
+ * Moves old adoptions of a tenant into the month partitions of {@code adopted_pets_archive}; {@link PetServices}
+ * runs it every {@code pets.archive.intervalMillis} (0 disables it). Adoptions made more than {@code pets.archive.afterDays}
+ * ago are archived, partitions are created {@code pets.archive.premakeMonths} ahead, and with
+ * {@code pets.archive.retentionMonths} above 0 partitions older than that are detached.
+ * The work is done by the {@code archive_adopted_pets} database function, which skips runs that overlap.
+ */
+public class PetArchiver {
+    static final long INTERVAL_MILLIS = Long.getLong("pets.archive.intervalMillis", 3600000L);
+    private static final int AFTER_DAYS = Integer.getInteger("pets.archive.afterDays", 180);
+    private static final int RETENTION_MONTHS = Integer.getInteger("pets.archive.retentionMonths", 0);
+    private static final int PREMAKE_MONTHS = Integer.getInteger("pets.archive.premakeMonths", 3);
+
+    private final String schema;
+    private final PostgresClient pgClient;
+
+    public PetArchiver(String tenantId, PostgresClient pgClient) {
+        this.schema = PostgresClient.convertToPsqlStandard(tenantId);
+        this.pgClient = pgClient;
+    }
+
+    /**
+     * @param afterDays - archive adoptions older than this, null for the configured age
+     * @param retentionMonths - detach partitions older than this, 0 for none, null for the configured retention
+     * @return - future of {@code {"archived": <number of adoptions moved>, "detached": [<partition names>]}}
+     */
+    public Future<JsonObject> archive(Integer afterDays, Integer retentionMonths) {
+        int days = afterDays == null ? AFTER_DAYS : afterDays;
+        int months = retentionMonths == null ? RETENTION_MONTHS : retentionMonths;
+        String sql = "SELECT " + schema + ".archive_adopted_pets(make_interval(days => " + days + "), "
+            + (months > 0 ? "make_interval(months => " + months + ")" : "NULL") + ", " + PREMAKE_MONTHS + ")";
+        Future<JsonObject> future = Future.future();
+        try {
+            pgClient.select(sql, reply -> {
+                if (reply.failed()) {
+                    future.fail(reply.cause());
+                    return;
+                }
+                Object result = reply.result().getResults().get(0).getValue(0);
+                future.complete(result instanceof JsonObject ? (JsonObject) result : new JsonObject(result.toString()));
+            });
+        } catch (Exception e) {
+            future.fail(e);
+        }
+        return future;
+    }
+}
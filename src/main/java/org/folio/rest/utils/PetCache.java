@@ -0,0 +1,138 @@
+package org.folio.rest.utils;
+
+import org.folio.rest.jaxrs.model.Pet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-tenant in-process cache of pets read by id, bounded by size and time to live.
+ * Writers must invalidate the ids they touch; a load that started before an invalidation
+ * is not cached, so a concurrent reader cannot put back a row that was just changed.
+ */
+public class PetCache {
+    private static final int MAX_SIZE = Integer.getInteger("pets.cache.maxSize", 10000);
+    private static final long TTL_MILLIS = Long.getLong("pets.cache.ttlMillis", 30000L);
+    private static final Map<String, PetCache> CACHES = new ConcurrentHashMap<>();
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entry> entries;
+    private long generation;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public PetCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > PetCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static PetCache forTenant(String tenantId) {
+        return CACHES.computeIfAbsent(tenantId, tenant -> new PetCache(MAX_SIZE, TTL_MILLIS));
+    }
+
+    public static Map<String, PetCache> all() {
+        return CACHES;
+    }
+
+    /**
+     * @return - the cached pet or null if it is not cached or has expired
+     */
+    public synchronized Pet get(String table, String id) {
+        String key = key(table, id);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(key);
+            expirations.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.pet;
+    }
+
+    /**
+     * Generation to pass to {@link #put(String, String, Pet, long)} for a load that starts now
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches the pet unless an invalidation happened since the load began at the given generation
+     */
+    public synchronized void put(String table, String id, Pet pet, long loadGeneration) {
+        if (loadGeneration == generation) {
+            entries.put(key(table, id), new Entry(pet, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    public synchronized void invalidate(String table, String id) {
+        generation++;
+        if (entries.remove(key(table, id)) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    private static String key(String table, String id) {
+        return table + ':' + id;
+    }
+
+    private static class Entry {
+        private final Pet pet;
+        private final long expiresAt;
+
+        private Entry(Pet pet, long expiresAt) {
+            this.pet = pet;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.folio.rest.utils;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wakes up long-polling readers of the pet change feed. The change log triggers NOTIFY the schema
+ * of the changed tenant on {@link #CHANNEL}; the notifications arrive through {@link PetInvalidationBus}.
+ */
+public class PetChangeFeed {
+    public static final String CHANNEL = "pet_changes";
+
+    private static final PetChangeFeed INSTANCE = new PetChangeFeed();
+
+    private final Map<String, List<Waiter>> waiters = new ConcurrentHashMap<>();
+
+    public static PetChangeFeed getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Calls the handler on the current context once the schema changes or the timeout elapses, whichever comes first.
+     * Register before reading the changes, so that a change committed after the read is not missed.
+     *
+     * @return - the waiter, cancel it if the handler is no longer needed
+     */
+    public Waiter await(Vertx vertx, String schema, long timeoutMillis, Handler<Void> handler) {
+        Waiter waiter = new Waiter(vertx.getOrCreateContext(), handler);
+        synchronized (this) {
+            waiters.computeIfAbsent(schema, k -> new ArrayList<>()).add(waiter);
+        }
+        waiter.timerId = vertx.setTimer(timeoutMillis, id -> {
+            remove(schema, waiter);
+            waiter.wake();
+        });
+        waiter.cancel = () -> {
+            vertx.cancelTimer(waiter.timerId);
+            remove(schema, waiter);
+        };
+        return waiter;
+    }
+
+    private synchronized void remove(String schema, Waiter waiter) {
+        List<Waiter> schemaWaiters = waiters.get(schema);
+        if (schemaWaiters != null) {
+            schemaWaiters.remove(waiter);
+        }
+    }
+
+    void changed(String schema) {
+        List<Waiter> woken;
+        synchronized (this) {
+            woken = waiters.remove(schema);
+        }
+        if (woken != null) {
+            woken.forEach(Waiter::wake);
+        }
+    }
+
+    public static class Waiter {
+        private final Context context;
+        private final Handler<Void> handler;
+        private boolean woken;
+        private long timerId;
+        private Runnable cancel;
+
+        private Waiter(Context context, Handler<Void> handler) {
+            this.context = context;
+            this.handler = handler;
+        }
+
+        private void wake() {
+            synchronized (this) {
+                if (woken) {
+                    return;
+                }
+                woken = true;
+            }
+            context.runOnContext(handler);
+        }
+
+        /**
+         * Drops the waiter without calling its handler
+         */
+        public void cancel() {
+            synchronized (this) {
+                if (woken) {
+                    return;
+                }
+                woken = true;
+            }
+            cancel.run();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.folio.rest.utils;
+
+import io.vertx.core.Future;
+import org.folio.rest.persist.PostgresClient;
+
+/**
+ * Deletes old entries of the pet change log of a tenant; {@link PetServices} runs it every
+ * {@code pets.changes.pruneIntervalMillis} (0 disables it). Changes numbered more than {@code pets.changes.retentionDays}
+ * ago are deleted; a reader further behind than that misses them and has to read the pets again.
+ * Changes that have no position yet are kept, whatever their age.
+ */
+public class PetChangePruner {
+    static final long INTERVAL_MILLIS = Long.getLong("pets.changes.pruneIntervalMillis", 3600000L);
+    private static final int RETENTION_DAYS = Integer.getInteger("pets.changes.retentionDays", 7);
+
+    private final String schema;
+    private final PostgresClient pgClient;
+
+    public PetChangePruner(String tenantId, PostgresClient pgClient) {
+        this.schema = PostgresClient.convertToPsqlStandard(tenantId);
+        this.pgClient = pgClient;
+    }
+
+    /**
+     * @param retentionDays - delete changes older than this, null for the configured retention
+     * @return - future of the number of changes deleted
+     */
+    public Future<Integer> prune(Integer retentionDays) {
+        int days = retentionDays == null ? RETENTION_DAYS : retentionDays;
+        String sql = "DELETE FROM " + schema + ".pet_changes"
+            + " WHERE changed_at < now() - make_interval(days => " + days + ") AND seq IS NOT NULL";
+        Future<Integer> future = Future.future();
+        try {
+            pgClient.execute(sql, reply -> {
+                if (reply.failed()) {
+                    future.fail(reply.cause());
+                    return;
+                }
+                future.complete(reply.result().getUpdated());
+            });
+        } catch (Exception e) {
+            future.fail(e);
+        }
+        return future;
+    }
+}
@@ -0,0 +1,150 @@
+package org.folio.rest.utils;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+import org.folio.rest.persist.PostgresClient;
+import org.postgresql.PGConnection;
+import org.z3950.zing.cql.cql2pgjson.FieldException;
+import org.z3950.zing.cql.cql2pgjson.QueryValidationException;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk export of the pets of a tenant with {@code COPY ... TO STDOUT}: the rows arrive as the bytes of the body,
+ * without a result set or a Pet per row, and are collected in memory up to a limit. The async client of RMB cannot
+ * run COPY, so each export opens a JDBC connection of its own, on one of the {@code pets.export.maxConcurrent}
+ * worker threads shared by all tenants; at most that many export connections are open, further exports wait
+ * for a thread.
+ */
+public class PetExporter {
+    public static final String NDJSON = "ndjson";
+    public static final String CSV = "csv";
+
+    private static final String[] ALL_FIELDS = {"*"};
+    private static final int MAX_CONCURRENT = Integer.getInteger("pets.export.maxConcurrent", 4);
+    private static final Map<String, String> TABLES = new HashMap<>();
+    private static final Map<String, String> CONTENT_TYPES = new HashMap<>();
+
+    static {
+        TABLES.put("homeless", "homeless_pets");
+        TABLES.put("adopted", "adopted_pets");
+        CONTENT_TYPES.put(NDJSON, "application/x-ndjson");
+        CONTENT_TYPES.put(CSV, "text/csv");
+    }
+
+    private static WorkerExecutor executor;
+
+    private final Vertx vertx;
+    private final String schema;
+    private final TenantContext tenantContext;
+
+    public PetExporter(Vertx vertx, String tenantId) {
+        this.vertx = vertx;
+        this.schema = PostgresClient.convertToPsqlStandard(tenantId);
+        this.tenantContext = TenantContext.forTenant(vertx, tenantId);
+    }
+
+    public static String contentType(String format) {
+        return CONTENT_TYPES.get(format);
+    }
+
+    /**
+     * NDJSON copies the jsonb text of each row as one line. The CSV format writes it unescaped: quote and
+     * delimiter are control characters, which the jsonb text always escapes, and it contains no line breaks.
+     *
+     * @param table - homeless or adopted
+     * @param format - ndjson or csv
+     * @param query - CQL query as GET /pets takes it, sorting is ignored
+     * @return - the COPY statement
+     * @throws IllegalArgumentException - if a parameter is not valid
+     */
+    public String copySql(String table, String format, String query) {
+        String tableName = TABLES.get(table);
+        if (tableName == null) {
+            throw new IllegalArgumentException("table must be one of " + TABLES.keySet());
+        }
+        if (!CONTENT_TYPES.containsKey(format)) {
+            throw new IllegalArgumentException("format must be one of " + CONTENT_TYPES.keySet());
+        }
+        String where;
+        try {
+            where = tenantContext.query(ALL_FIELDS, tableName).query(query).build().getWhere();
+        } catch (FieldException | QueryValidationException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        String from = " FROM " + schema + "." + tableName + where;
+        if (CSV.equals(format)) {
+            return "COPY (SELECT jsonb->>'id' AS id, jsonb->>'genus' AS genus, jsonb->>'quantity' AS quantity,"
+                + " jsonb->>'notes' AS notes" + from + ") TO STDOUT WITH (FORMAT csv, HEADER)";
+        }
+        return "COPY (SELECT jsonb" + from + ") TO STDOUT WITH (FORMAT csv, QUOTE E'\\x01', DELIMITER E'\\x02')";
+    }
+
+    /**
+     * @return - future of the whole export, failed with {@link TooLargeException} as soon as it exceeds maxBytes
+     */
+    public Future<byte[]> copyOut(String sql, long maxBytes) {
+        Future<byte[]> future = Future.future();
+        executor().<byte[]>executeBlocking(blocking -> {
+            try (Connection connection = connect()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream() {
+                    @Override
+                    public synchronized void write(byte[] b, int off, int len) {
+                        if (count + len > maxBytes) {
+                            throw new TooLargeException(maxBytes);
+                        }
+                        super.write(b, off, len);
+                    }
+                };
+                // the copy manager cancels the copy when the stream throws
+                connection.unwrap(PGConnection.class).getCopyAPI().copyOut(sql, out);
+                blocking.complete(out.toByteArray());
+            } catch (Exception e) {
+                blocking.fail(e);
+            }
+        }, false, future.completer());
+        return future;
+    }
+
+    private Connection connect() throws SQLException {
+        JsonObject config = tenantContext.getPgClient().getConnectionConfig();
+        String url = "jdbc:postgresql://" + config.getString("host") + ":" + config.getInteger("port") + "/" + config.getString("database");
+        return DriverManager.getConnection(url, config.getString("username"), config.getString("password"));
+    }
+
+    private WorkerExecutor executor() {
+        synchronized (PetExporter.class) {
+            if (executor == null) {
+                // a large export takes a while, it is not a blocked thread
+                executor = vertx.createSharedWorkerExecutor("pets-export", MAX_CONCURRENT, TimeUnit.MINUTES.toNanos(10));
+            }
+            return executor;
+        }
+    }
+
+    /**
+     * Closes the worker threads of the exports, the next export creates them again
+     */
+    public static synchronized void closeExecutor() {
+        if (executor != null) {
+            executor.close();
+            executor = null;
+        }
+    }
+
+    public static class TooLargeException extends RuntimeException {
+        public TooLargeException(long maxBytes) {
+            super("The export exceeds " + maxBytes + " bytes");
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package org.folio.rest.utils;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.folio.rest.persist.PostgresClient;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the {@link PetCache} of every module instance in sync: writers NOTIFY the ids they changed
+ * and each instance LISTENs on the same channel and evicts them from its local cache.
+ * The vert.x async client cannot receive notifications, so listening uses a dedicated JDBC connection,
+ * which also receives the wake-ups of the {@link PetChangeFeed}. {@link PetServices} starts and stops it.
+ */
+public class PetInvalidationBus {
+    public static final String CHANNEL = "pets_invalidation";
+
+    private static final Logger LOG = LoggerFactory.getLogger(PetInvalidationBus.class);
+    private static final int POLL_TIMEOUT_MILLIS = 1000;
+    private static final long RECONNECT_DELAY_MILLIS = 5000;
+    private static final PetInvalidationBus INSTANCE = new PetInvalidationBus();
+
+    private final String origin = UUID.randomUUID().toString();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile Thread listener;
+    private volatile Connection connection;
+
+    public static PetInvalidationBus getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts listening for invalidations of other instances, once per JVM
+     */
+    public void start(Vertx vertx) {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        JsonObject config = PostgresClient.getInstance(vertx).getConnectionConfig();
+        String url = "jdbc:postgresql://" + config.getString("host") + ":" + config.getInteger("port") + "/" + config.getString("database");
+        Thread thread = new Thread(() -> listen(url, config.getString("username"), config.getString("password")), CHANNEL + "-listener");
+        thread.setDaemon(true);
+        listener = thread;
+        thread.start();
+    }
+
+    /**
+     * Stops the listener thread and closes its connection
+     */
+    public void stop() {
+        Thread thread = listener;
+        listener = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        Connection listening = connection;
+        if (listening != null) {
+            try {
+                listening.close();
+            } catch (SQLException e) {
+                if (!listening()) {
+                    return;
+                }
+                LOG.warn("Failed to close " + CHANNEL + " listener connection", e);
+            }
+        }
+        started.set(false);
+    }
+
+    /**
+     * @return - statement that notifies other instances about the change; inside a transaction
+     * the notification is only delivered on commit
+     */
+    public String notifySql(String tenantId, String table, String id) {
+        return "SELECT pg_notify('" + CHANNEL + "', " + payload(tenantId, table, id) + ")";
+    }
+
+    /**
+     * @return - statement that notifies other instances about the change of several pets in one round trip
+     */
+    public String notifySql(String tenantId, String table, List<String> ids) {
+        StringBuilder payloads = new StringBuilder();
+        for (String id : ids) {
+            payloads.append(payloads.length() == 0 ? "" : ", ").append('(').append(payload(tenantId, table, id)).append(')');
+        }
+        return "SELECT pg_notify('" + CHANNEL + "', payload) FROM (VALUES " + payloads + ") AS payloads(payload)";
+    }
+
+    public void publish(PostgresClient pgClient, String tenantId, String table, String id) {
+        try {
+            pgClient.select(notifySql(tenantId, table, id), reply -> {
+                if (reply.failed()) {
+                    LOG.warn("Failed to publish invalidation of " + table + " " + id, reply.cause());
+                }
+            });
+        } catch (Exception e) {
+            LOG.warn("Failed to publish invalidation of " + table + " " + id, e);
+        }
+    }
+
+    public void publish(PostgresClient pgClient, String tenantId, String table, List<String> ids) {
+        try {
+            pgClient.select(notifySql(tenantId, table, ids), reply -> {
+                if (reply.failed()) {
+                    LOG.warn("Failed to publish invalidation of " + ids.size() + " rows of " + table, reply.cause());
+                }
+            });
+        } catch (Exception e) {
+            LOG.warn("Failed to publish invalidation of " + ids.size() + " rows of " + table, e);
+        }
+    }
+
+    private String payload(String tenantId, String table, String id) {
+        String payload = new JsonObject()
+            .put("origin", origin)
+            .put("tenant", tenantId)
+            .put("table", table)
+            .put("id", id)
+            .encode();
+        return "'" + payload.replace("'", "''") + "'";
+    }
+
+    void handle(String payload) {
+        try {
+            JsonObject message = new JsonObject(payload);
+            if (!origin.equals(message.getString("origin"))) {
+                PetCache.forTenant(message.getString("tenant")).invalidate(message.getString("table"), message.getString("id"));
+            }
+        } catch (DecodeException e) {
+            LOG.warn("Ignoring malformed invalidation " + payload, e);
+        }
+    }
+
+    private boolean listening() {
+        return listener == Thread.currentThread();
+    }
+
+    private void listen(String url, String username, String password) {
+        while (listening()) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                this.connection = connection;
+                if (!listening()) {
+                    return;
+                }
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                    statement.execute("LISTEN " + PetChangeFeed.CHANNEL);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (listening()) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            if (PetChangeFeed.CHANNEL.equals(notification.getName())) {
+                                PetChangeFeed.getInstance().changed(notification.getParameter());
+                            } else {
+                                handle(notification.getParameter());
+                            }
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                LOG.warn("Lost " + CHANNEL + " listener connection, reconnecting", e);
+                // evictions may have been missed while disconnected
+                PetCache.all().values().forEach(PetCache::clear);
+                sleep(RECONNECT_DELAY_MILLIS);
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
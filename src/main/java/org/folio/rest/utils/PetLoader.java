@@ -0,0 +1,206 @@
+package org.folio.rest.utils;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.folio.rest.jaxrs.model.Pet;
+import org.folio.rest.persist.PostgresClient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-tenant batcher of pet lookups by id. Ids requested within {@code pets.loader.windowMillis}, or until
+ * {@code pets.loader.maxBatchSize} ids are waiting, are loaded by one query per table on the primary key with
+ * the ids bound as UUIDs; a request for an id that is already being loaded shares that load unless the tenant's
+ * {@link PetCache} was invalidated since that load was sent. Every caller is completed on its own vert.x
+ * context with its own copy of the pet.
+ */
+public class PetLoader {
+    private static final long WINDOW_MILLIS = Long.getLong("pets.loader.windowMillis", 1L);
+    private static final int MAX_BATCH_SIZE = Integer.getInteger("pets.loader.maxBatchSize", 100);
+    private static final Map<String, PetLoader> LOADERS = new ConcurrentHashMap<>();
+
+    private final Vertx vertx;
+    private final String schema;
+    private final PostgresClient pgClient;
+    private final PetCache petCache;
+    private final Map<String, Batch> pending = new HashMap<>();
+    private final Map<String, Batch> inFlight = new HashMap<>();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong loadedIds = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private PetLoader(Vertx vertx, String tenantId) {
+        this.vertx = vertx;
+        this.schema = PostgresClient.convertToPsqlStandard(tenantId);
+        this.pgClient = PostgresClient.getInstance(vertx, tenantId);
+        this.petCache = PetCache.forTenant(tenantId);
+    }
+
+    public static PetLoader forTenant(Vertx vertx, String tenantId) {
+        return LOADERS.computeIfAbsent(tenantId, tenant -> new PetLoader(vertx, tenant));
+    }
+
+    public static Map<String, PetLoader> all() {
+        return LOADERS;
+    }
+
+    /**
+     * @return - future of the pet, completed with null if there is no pet with the id
+     */
+    public Future<Pet> load(String table, String id) {
+        Future<Pet> future = Future.future();
+        Waiter waiter = new Waiter(vertx.getOrCreateContext(), future);
+        long generation = petCache.generation();
+        Batch full = null;
+        synchronized (this) {
+            // a load sent before the caller's generation may read the row as it was before the invalidating write
+            Batch loading = inFlight.get(key(table, id));
+            if (loading != null && loading.generation >= generation) {
+                loading.waiters.get(id).add(waiter);
+                coalesced.incrementAndGet();
+                return future;
+            }
+            Batch batch = pending.get(table);
+            if (batch == null) {
+                Batch created = new Batch(table);
+                created.timerId = vertx.setTimer(WINDOW_MILLIS, timerId -> dispatchPending(created));
+                pending.put(table, created);
+                batch = created;
+            }
+            List<Waiter> waiters = batch.waiters.computeIfAbsent(id, k -> new ArrayList<>());
+            if (!waiters.isEmpty()) {
+                coalesced.incrementAndGet();
+            }
+            waiters.add(waiter);
+            if (batch.waiters.size() >= MAX_BATCH_SIZE) {
+                vertx.cancelTimer(batch.timerId);
+                full = take(batch);
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+        return future;
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getLoadedIds() {
+        return loadedIds.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    private void dispatchPending(Batch batch) {
+        Batch due;
+        synchronized (this) {
+            due = pending.get(batch.table) == batch ? take(batch) : null;
+        }
+        if (due != null) {
+            dispatch(due);
+        }
+    }
+
+    /**
+     * Moves the batch from pending to in flight, so that later requests for its ids join it, and records the
+     * cache generation its query starts at; callers hold the lock
+     */
+    private Batch take(Batch batch) {
+        pending.remove(batch.table);
+        batch.generation = petCache.generation();
+        batch.waiters.keySet().forEach(id -> inFlight.put(key(batch.table, id), batch));
+        return batch;
+    }
+
+    private void dispatch(Batch batch) {
+        batches.incrementAndGet();
+        loadedIds.addAndGet(batch.waiters.size());
+        JsonArray ids = new JsonArray();
+        batch.waiters.keySet().stream().map(PgParams::uuid).filter(Objects::nonNull).forEach(ids::add);
+        if (ids.isEmpty()) {
+            complete(batch, Future.succeededFuture(Collections.emptyList()));
+            return;
+        }
+        String sql = "SELECT jsonb::text FROM " + schema + "." + batch.table + " WHERE _id IN (" + PgParams.uuids(ids.size()) + ")";
+        PgParams.query(pgClient, sql, ids).setHandler(reply -> {
+            if (reply.failed()) {
+                complete(batch, Future.failedFuture(reply.cause()));
+                return;
+            }
+            List<Pet> pets = new ArrayList<>();
+            try {
+                reply.result().getResults().forEach(row -> pets.add(new JsonObject(row.getString(0)).mapTo(Pet.class)));
+            } catch (Exception e) {
+                complete(batch, Future.failedFuture(e));
+                return;
+            }
+            complete(batch, Future.succeededFuture(pets));
+        });
+    }
+
+    private void complete(Batch batch, AsyncResult<List<Pet>> reply) {
+        Map<String, Pet> pets = new HashMap<>();
+        if (reply.succeeded()) {
+            reply.result().forEach(pet -> pets.put(pet.getId(), pet));
+        }
+        synchronized (this) {
+            // a newer load of the id may have replaced this one
+            batch.waiters.keySet().forEach(id -> inFlight.remove(key(batch.table, id), batch));
+        }
+        batch.waiters.forEach((id, waiters) -> {
+            Pet pet = pets.get(PgParams.uuid(id));
+            for (int i = 0; i < waiters.size(); i++) {
+                Waiter waiter = waiters.get(i);
+                Pet copy = pet == null || i == 0 ? pet : JsonObject.mapFrom(pet).mapTo(Pet.class);
+                waiter.context.runOnContext(v -> {
+                    if (reply.succeeded()) {
+                        waiter.future.complete(copy);
+                    } else {
+                        waiter.future.fail(reply.cause());
+                    }
+                });
+            }
+        });
+    }
+
+    private static String key(String table, String id) {
+        return table + ':' + id;
+    }
+
+    private static class Batch {
+        private final String table;
+        private final Map<String, List<Waiter>> waiters = new LinkedHashMap<>();
+        private long timerId;
+        private long generation;
+
+        private Batch(String table) {
+            this.table = table;
+        }
+    }
+
+    private static class Waiter {
+        private final Context context;
+        private final Future<Pet> future;
+
+        private Waiter(Context context, Future<Pet> future) {
+            this.context = context;
+            this.future = future;
+        }
+    }
+}
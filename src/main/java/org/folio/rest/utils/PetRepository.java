@@ -0,0 +1,42 @@
+package org.folio.rest.utils;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import org.folio.rest.jaxrs.model.Pet;
+
+/**
+ * Reads and writes of single pets by id. {@code pets.repository} selects the implementation:
+ * {@code postgresClient} (default) goes through RMB's PostgresClient, {@code reactive} through
+ * a pipelining client with prepared statements.
+ */
+public interface PetRepository {
+    String POSTGRES_CLIENT = "postgresClient";
+    String REACTIVE = "reactive";
+
+    static PetRepository forTenant(Vertx vertx, String tenantId) {
+        String repository = System.getProperty("pets.repository", POSTGRES_CLIENT);
+        switch (repository) {
+            case POSTGRES_CLIENT:
+                return new PostgresClientPetRepository(vertx, tenantId);
+            case REACTIVE:
+                return new ReactivePetRepository(vertx, tenantId);
+            default:
+                throw new IllegalArgumentException("Unknown pets.repository " + repository);
+        }
+    }
+
+    /**
+     * @return - future of the pet, completed with null if there is no pet with the id
+     */
+    Future<Pet> findById(String table, String id);
+
+    /**
+     * @return - future of true if the pet was replaced, false if there is no pet with its id
+     */
+    Future<Boolean> update(String table, Pet pet);
+
+    /**
+     * @return - future of true if the pet was deleted, false if there is no pet with the id
+     */
+    Future<Boolean> delete(String table, String id);
+}
@@ -0,0 +1,106 @@
+package org.folio.rest.utils;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.folio.rest.persist.PostgresClient;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * Background work of the module: the {@link PetInvalidationBus} listener and the {@link PetArchiver} and
+ * {@link PetChangePruner} runs of every tenant the module is enabled for. Deployed once per JVM by the
+ * init hook; undeploying it, which closing the Vertx does, stops the work, closes the tenant contexts and
+ * the worker threads of the {@link PetExporter}.
+ */
+public class PetServices extends AbstractVerticle {
+    private static final Logger LOG = LoggerFactory.getLogger(PetServices.class);
+    private static final AtomicBoolean RUNNING = new AtomicBoolean();
+
+    private boolean owner;
+    private long archiveTimerId = -1;
+    private long pruneTimerId = -1;
+
+    @Override
+    public void start(Future<Void> startFuture) {
+        // RestVerticle runs the init hook for each of its instances
+        owner = RUNNING.compareAndSet(false, true);
+        if (!owner) {
+            startFuture.complete();
+            return;
+        }
+        PetInvalidationBus.getInstance().start(vertx);
+        if (PetArchiver.INTERVAL_MILLIS > 0) {
+            archiveTimerId = vertx.setPeriodic(PetArchiver.INTERVAL_MILLIS, id -> archive());
+        }
+        if (PetChangePruner.INTERVAL_MILLIS > 0) {
+            pruneTimerId = vertx.setPeriodic(PetChangePruner.INTERVAL_MILLIS, id -> pruneChanges());
+        }
+        startFuture.complete();
+    }
+
+    @Override
+    public void stop() {
+        if (!owner) {
+            return;
+        }
+        if (archiveTimerId != -1) {
+            vertx.cancelTimer(archiveTimerId);
+        }
+        if (pruneTimerId != -1) {
+            vertx.cancelTimer(pruneTimerId);
+        }
+        PetExporter.closeExecutor();
+        PetInvalidationBus.getInstance().stop();
+        TenantContext.closeAll();
+        RUNNING.set(false);
+    }
+
+    private void archive() {
+        forEachTenant("adopted_pets_archive", (tenantId, pgClient) ->
+            new PetArchiver(tenantId, pgClient).archive(null, null).setHandler(res -> {
+                if (res.failed()) {
+                    LOG.warn("Archiving adopted pets of " + tenantId + " failed", res.cause());
+                }
+            })
+        );
+    }
+
+    private void pruneChanges() {
+        forEachTenant("pet_changes", (tenantId, pgClient) ->
+            new PetChangePruner(tenantId, pgClient).prune(null).setHandler(res -> {
+                if (res.failed()) {
+                    LOG.warn("Pruning pet changes of " + tenantId + " failed", res.cause());
+                }
+            })
+        );
+    }
+
+    /**
+     * Runs the work for every tenant the module is enabled for, whether or not this instance served it yet:
+     * the tenants are the schemas of the module that have the table, as the tenant API creates and drops them.
+     */
+    private void forEachTenant(String table, BiConsumer<String, PostgresClient> work) {
+        // the schema of a tenant is the tenant id followed by this suffix
+        String suffix = PostgresClient.convertToPsqlStandard("");
+        String sql = "SELECT left(nspname, -" + suffix.length() + ") FROM pg_namespace"
+            + " WHERE right(nspname, " + suffix.length() + ") = '" + suffix.replace("'", "''") + "'"
+            + " AND to_regclass(quote_ident(nspname) || '." + table + "') IS NOT NULL";
+        try {
+            PostgresClient.getInstance(vertx).select(sql, reply -> {
+                if (reply.failed()) {
+                    LOG.warn("Listing the tenants failed", reply.cause());
+                    return;
+                }
+                reply.result().getResults().forEach(row -> {
+                    String tenantId = row.getString(0);
+                    work.accept(tenantId, PostgresClient.getInstance(vertx, tenantId));
+                });
+            });
+        } catch (Exception e) {
+            LOG.warn("Listing the tenants failed", e);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package org.folio.rest.utils;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import org.folio.rest.jaxrs.model.Pet;
+import org.folio.rest.persist.PostgresClient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-tenant write-behind queue for pet updates. Updates of the same pet within
+ * {@code pets.writeBehind.windowMillis} are coalesced so that only the last one is written, and all queued
+ * pets are flushed by one {@code UPDATE ... FROM (VALUES ...)} statement on the primary key, with bound parameters, earlier once
+ * {@code pets.writeBehind.maxBatchSize} pets are queued. One flush runs at a time, so a later update of a pet
+ * is never overtaken by an earlier one; updates queued meanwhile are flushed right after it. If the statement
+ * fails, the pets are written one by one, so a pet that violates a unique index fails alone. Callers are
+ * acknowledged on their own context when their write has committed.
+ */
+public class PetWriteBehind {
+    private static final long WINDOW_MILLIS = Long.getLong("pets.writeBehind.windowMillis", 10L);
+    private static final int MAX_BATCH_SIZE = Integer.getInteger("pets.writeBehind.maxBatchSize", 500);
+
+    private final Vertx vertx;
+    private final String tenantId;
+    private final String table;
+    private final PostgresClient pgClient;
+    private Map<String, PendingWrite> pending = new LinkedHashMap<>();
+    private long timerId = -1;
+    private boolean flushing;
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+
+    public PetWriteBehind(Vertx vertx, String tenantId, String table) {
+        this.vertx = vertx;
+        this.tenantId = tenantId;
+        this.table = table;
+        this.pgClient = PostgresClient.getInstance(vertx, tenantId);
+    }
+
+    /**
+     * Queues the pet, replacing an update of the same pet that is not flushed yet
+     *
+     * @return - future completed with true once the pet is written, false if there is no pet with its id
+     */
+    public Future<Boolean> update(Pet pet) {
+        Future<Boolean> future = Future.future();
+        Waiter waiter = new Waiter(vertx.getOrCreateContext(), future);
+        Map<String, PendingWrite> full = null;
+        synchronized (this) {
+            writes.incrementAndGet();
+            PendingWrite write = pending.get(pet.getId());
+            if (write == null) {
+                pending.put(pet.getId(), new PendingWrite(pet, waiter));
+            } else {
+                coalesced.incrementAndGet();
+                write.pet = pet;
+                write.waiters.add(waiter);
+            }
+            // while a flush runs, it takes the queued writes when it is done
+            if (!flushing && pending.size() >= MAX_BATCH_SIZE) {
+                full = takePending();
+            } else if (!flushing && timerId == -1) {
+                timerId = vertx.setTimer(WINDOW_MILLIS, id -> flushPending());
+            }
+        }
+        if (full != null) {
+            flush(full);
+        }
+        return future;
+    }
+
+    public long getWrites() {
+        return writes.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getFlushes() {
+        return flushes.get();
+    }
+
+    private void flushPending() {
+        Map<String, PendingWrite> due;
+        synchronized (this) {
+            timerId = -1;
+            due = pending.isEmpty() || flushing ? null : takePending();
+        }
+        if (due != null) {
+            flush(due);
+        }
+    }
+
+    private void flushNext() {
+        Map<String, PendingWrite> next;
+        synchronized (this) {
+            flushing = false;
+            next = pending.isEmpty() ? null : takePending();
+        }
+        if (next != null) {
+            flush(next);
+        }
+    }
+
+    /**
+     * Detaches the queued writes for the flush, so that new updates start the next batch; callers hold the lock
+     */
+    private Map<String, PendingWrite> takePending() {
+        if (timerId != -1) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+        flushing = true;
+        Map<String, PendingWrite> batch = pending;
+        pending = new LinkedHashMap<>();
+        return batch;
+    }
+
+    private void flush(Map<String, PendingWrite> batch) {
+        flushes.incrementAndGet();
+        Map<String, AsyncResult<Boolean>> results = new HashMap<>();
+        LatencyMetrics.forTenant(tenantId).time("writeBehindFlush", () -> write(batch, results)).setHandler(res -> {
+            List<String> updated = new ArrayList<>();
+            results.forEach((id, result) -> {
+                if (result.succeeded() && result.result()) {
+                    updated.add(id);
+                }
+            });
+            PetCache petCache = PetCache.forTenant(tenantId);
+            updated.forEach(id -> petCache.invalidate(table, id));
+            if (!updated.isEmpty()) {
+                PetInvalidationBus.getInstance().publish(pgClient, tenantId, table, updated);
+            }
+            batch.forEach((id, write) -> write.waiters.forEach(waiter ->
+                waiter.context.runOnContext(v -> waiter.future.handle(results.get(id)))));
+            flushNext();
+        });
+    }
+
+    /**
+     * Writes the batch with one statement, or pet by pet if that fails
+     *
+     * @param results - filled with true for every pet written, false for those that do not exist
+     * and the failure for those that could not be written
+     */
+    private Future<Void> write(Map<String, PendingWrite> batch, Map<String, AsyncResult<Boolean>> results) {
+        Future<Void> future = Future.future();
+        update(batch).setHandler(reply -> {
+            if (reply.succeeded()) {
+                batch.keySet().forEach(id -> results.put(id, Future.succeededFuture(reply.result().contains(id))));
+                future.complete();
+            } else if (batch.size() == 1) {
+                batch.keySet().forEach(id -> results.put(id, Future.failedFuture(reply.cause())));
+                future.complete();
+            } else {
+                Future<Void> chain = Future.succeededFuture();
+                for (Map.Entry<String, PendingWrite> entry : batch.entrySet()) {
+                    chain = chain.compose(v -> write(Collections.singletonMap(entry.getKey(), entry.getValue()), results));
+                }
+                chain.setHandler(future.completer());
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @return - future of the ids of the pets that were updated
+     */
+    private Future<Set<String>> update(Map<String, PendingWrite> batch) {
+        Map<String, String> ids = new HashMap<>();
+        StringBuilder values = new StringBuilder();
+        JsonArray params = new JsonArray();
+        try {
+            for (Map.Entry<String, PendingWrite> write : batch.entrySet()) {
+                String uuid = PgParams.uuid(write.getKey());
+                if (uuid == null) {
+                    // no pet has this id
+                    continue;
+                }
+                ids.put(uuid, write.getKey());
+                values.append(values.length() == 0 ? "" : ", ").append("(?::uuid, ?::jsonb)");
+                params.add(uuid).add(PostgresClient.pojo2json(write.getValue().pet));
+            }
+        } catch (Exception e) {
+            return Future.failedFuture(e);
+        }
+        if (ids.isEmpty()) {
+            return Future.succeededFuture(Collections.emptySet());
+        }
+        String sql = "UPDATE " + PostgresClient.convertToPsqlStandard(tenantId) + "." + table + " AS pets"
+            + " SET jsonb = pending.jsonb FROM (VALUES " + values + ") AS pending(id, jsonb)"
+            + " WHERE pets._id = pending.id RETURNING pending.id::text";
+        return PgParams.query(pgClient, sql, params).map(resultSet -> {
+            Set<String> updated = new HashSet<>();
+            for (JsonArray row : resultSet.getResults()) {
+                updated.add(ids.get(row.getString(0)));
+            }
+            return updated;
+        });
+    }
+
+    private static class PendingWrite {
+        private Pet pet;
+        private final List<Waiter> waiters = new ArrayList<>();
+
+        private PendingWrite(Pet pet, Waiter waiter) {
+            this.pet = pet;
+            this.waiters.add(waiter);
+        }
+    }
+
+    private static class Waiter {
+        private final Context context;
+        private final Future<Boolean> future;
+
+        private Waiter(Context context, Future<Boolean> future) {
+            this.context = context;
+            this.future = future;
+        }
+    }
+}
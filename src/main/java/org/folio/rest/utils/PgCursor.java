@@ -0,0 +1,51 @@
+package org.folio.rest.utils;
+
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Opaque keyset pagination cursor. It carries the _id of the last row of a page: keyset pages are
+ * ordered by the primary key only, a query with sortBy cannot be paged by cursor.
+ */
+public class PgCursor {
+    private static final String ID = "id";
+
+    private final String id;
+
+    private PgCursor(String id) {
+        this.id = id;
+    }
+
+    public static PgCursor after(String id) {
+        return new PgCursor(id);
+    }
+
+    /**
+     * Decodes a cursor received from a client
+     *
+     * @param cursor - value of a previous nextCursor
+     * @return - decoded cursor
+     * @throws IllegalArgumentException - if the cursor was not produced by {@link #encode()}
+     */
+    public static PgCursor decode(String cursor) {
+        try {
+            JsonObject json = new JsonObject(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+            return new PgCursor(UUID.fromString(json.getString(ID)).toString());
+        } catch (DecodeException | ClassCastException | NullPointerException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    public String encode() {
+        String json = new JsonObject().put(ID, this.id).encode();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String getId() {
+        return this.id;
+    }
+}
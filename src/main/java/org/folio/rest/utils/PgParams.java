@@ -0,0 +1,59 @@
+package org.folio.rest.utils;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.sql.ResultSet;
+import org.folio.rest.persist.PostgresClient;
+
+import java.util.Collections;
+import java.util.UUID;
+
+/**
+ * Statements with bound parameters. RMB's {@link PostgresClient} only runs plain SQL outside a transaction,
+ * these run on a connection of its pool; ids are bound as UUIDs so that they are looked up by primary key.
+ */
+public final class PgParams {
+
+    private PgParams() {
+    }
+
+    /**
+     * Runs a statement with {@code ?} placeholders on a connection of the pool, outside of a transaction
+     */
+    public static Future<ResultSet> query(PostgresClient pgClient, String sql, JsonArray params) {
+        Future<ResultSet> future = Future.future();
+        try {
+            pgClient.getClient().getConnection(connection -> {
+                if (connection.failed()) {
+                    future.fail(connection.cause());
+                    return;
+                }
+                connection.result().queryWithParams(sql, params, reply -> {
+                    connection.result().close();
+                    future.handle(reply);
+                });
+            });
+        } catch (Exception e) {
+            future.fail(e);
+        }
+        return future;
+    }
+
+    /**
+     * @return - {@code count} placeholders for UUIDs, separated by commas
+     */
+    public static String uuids(int count) {
+        return String.join(", ", Collections.nCopies(count, "?::uuid"));
+    }
+
+    /**
+     * @return - the canonical form of the id, null if it is no UUID and so no pet's id
+     */
+    public static String uuid(String id) {
+        try {
+            return id == null ? null : UUID.fromString(id).toString();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -1,21 +1,23 @@
 package org.folio.rest.utils;
 
-import org.folio.rest.persist.Criteria.Limit;
-import org.folio.rest.persist.Criteria.Offset;
-import org.folio.rest.persist.cql.CQLWrapper;
-import org.z3950.zing.cql.cql2pgjson.CQL2PgJSON;
 import org.z3950.zing.cql.cql2pgjson.FieldException;
+import org.z3950.zing.cql.cql2pgjson.QueryValidationException;
 
-import java.util.Arrays;
 import java.util.List;
+import java.util.regex.Pattern;
 
 public class PgQuery {
+    private static final Pattern FIELD_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
     private final String[] fields;
     private final String table;
     private final String query;
     private final int offset;
     private final int limit;
-    private final CQLWrapper cql;
+    private final boolean keyset;
+    private final String where;
+    private final String filter;
+    private final String projection;
 
     private PgQuery(PgQueryBuilder builder) {
         this.fields = builder.fields;
@@ -23,7 +25,10 @@ public class PgQuery {
         this.query = builder.query;
         this.offset = builder.offset;
         this.limit = builder.limit;
-        this.cql = builder.cql;
+        this.keyset = builder.keyset;
+        this.where = builder.where;
+        this.filter = builder.filter;
+        this.projection = builder.projection;
     }
 
     public String[] getFields() {
@@ -46,23 +51,65 @@ public class PgQuery {
         return this.limit;
     }
 
-    public CQLWrapper getCql() {
-        return this.cql;
+    /**
+     * @return - true if pages are selected by a cursor over the primary key instead of an offset
+     */
+    public boolean isKeyset() {
+        return this.keyset;
+    }
+
+    /**
+     * @return - WHERE clause of the query without paging, empty when the query matches all rows
+     */
+    public String getWhere() {
+        return this.where;
+    }
+
+    /**
+     * @return - WHERE, ORDER BY, LIMIT and OFFSET clauses to append to a select from the table
+     */
+    public String getFilter() {
+        return this.filter;
+    }
+
+    /**
+     * @return - expression selecting the projected jsonb of a row, the whole jsonb when no projection is set
+     */
+    public String getProjection() {
+        return this.projection;
+    }
+
+    /**
+     * @return - true if only some properties of the jsonb are selected
+     */
+    public boolean isProjected() {
+        return !"jsonb".equals(this.projection);
     }
 
     public static class PgQueryBuilder {
         private final String[] fields;
         private final String table;
+        private String tenantId = null;
         private String query = null;
         private int offset = 0;
         private int limit = 0;
-        private CQLWrapper cql;
+        private String cursor = null;
+        private boolean keyset;
+        private String where;
+        private String filter;
+        private List<String> projectedFields = null;
+        private String projection;
 
         public PgQueryBuilder(String[] fields, String table) {
             this.fields = fields;
             this.table = table;
         }
 
+        public PgQueryBuilder tenant(String tenantId) {
+            this.tenantId = tenantId;
+            return this;
+        }
+
         public PgQueryBuilder query(String query) {
             this.query = query;
             return this;
@@ -78,13 +125,68 @@ public class PgQuery {
             return this;
         }
 
-        public PgQuery build() throws FieldException {
-            List<String> jsonbFields = Arrays.asList(this.table + ".jsonb");
-            CQL2PgJSON cql2PgJson = new CQL2PgJSON(jsonbFields);
-            this.cql = new CQLWrapper(cql2PgJson, this.query)
-                .setLimit(new Limit(this.limit))
-                .setOffset(new Offset(this.offset));
+        /**
+         * Switches to keyset pagination: an empty cursor selects the first page,
+         * otherwise the page starts after the row the cursor points to
+         */
+        public PgQueryBuilder cursor(String cursor) {
+            this.cursor = cursor;
+            return this;
+        }
+
+        /**
+         * Restricts the selected jsonb to the given top-level properties; null or empty selects all of them
+         */
+        public PgQueryBuilder projection(List<String> fields) {
+            this.projectedFields = fields;
+            return this;
+        }
+
+        public PgQuery build() throws FieldException, QueryValidationException {
+            PgQueryCache.CompiledCql cql = PgQueryCache.getInstance().compile(this.tenantId, this.table, this.query);
+            this.where = cql.getWhere().isEmpty() ? "" : " WHERE " + cql.getWhere();
+            this.keyset = this.cursor != null;
+            StringBuilder sb = new StringBuilder();
+            if (this.keyset) {
+                if (!cql.getOrderBy().isEmpty()) {
+                    throw new IllegalArgumentException("sortBy cannot be combined with a cursor");
+                }
+                if (this.cursor.isEmpty()) {
+                    sb.append(this.where);
+                } else {
+                    PgCursor after = PgCursor.decode(this.cursor);
+                    sb.append(" WHERE ");
+                    if (!this.where.isEmpty()) {
+                        sb.append('(').append(cql.getWhere()).append(") AND ");
+                    }
+                    sb.append("_id > '").append(after.getId()).append('\'');
+                }
+                sb.append(" ORDER BY _id LIMIT ").append(this.limit);
+            } else {
+                sb.append(this.where);
+                if (!cql.getOrderBy().isEmpty()) {
+                    sb.append(" ORDER BY ").append(cql.getOrderBy());
+                }
+                sb.append(" LIMIT ").append(this.limit).append(" OFFSET ").append(this.offset);
+            }
+            this.filter = sb.toString();
+            this.projection = buildProjection();
             return new PgQuery(this);
         }
+
+        private String buildProjection() {
+            if (this.projectedFields == null || this.projectedFields.isEmpty()) {
+                return "jsonb";
+            }
+            StringBuilder sb = new StringBuilder("jsonb_strip_nulls(jsonb_build_object(");
+            for (int i = 0; i < this.projectedFields.size(); i++) {
+                String field = this.projectedFields.get(i);
+                if (!FIELD_NAME.matcher(field).matches()) {
+                    throw new IllegalArgumentException("Invalid field name: " + field);
+                }
+                sb.append(i == 0 ? "" : ", ").append('\'').append(field).append("', jsonb->'").append(field).append('\'');
+            }
+            return sb.append("))").toString();
+        }
     }
 }
@@ -0,0 +1,147 @@
+package org.folio.rest.utils;
+
+import org.z3950.zing.cql.cql2pgjson.CQL2PgJSON;
+import org.z3950.zing.cql.cql2pgjson.FieldException;
+import org.z3950.zing.cql.cql2pgjson.QueryValidationException;
+import org.z3950.zing.cql.cql2pgjson.SqlSelect;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of CQL queries already translated to SQL.
+ * Entries are keyed by tenant, table and normalized query text; paging is not part of the key
+ * and is applied by {@link PgQuery} on top of the cached translation.
+ */
+public class PgQueryCache {
+    private static final int DEFAULT_MAX_SIZE = Integer.getInteger("pets.cql.cache.maxSize", 1000);
+    private static final PgQueryCache INSTANCE = new PgQueryCache(DEFAULT_MAX_SIZE);
+
+    private final Map<String, CompiledCql> entries;
+    private final Map<String, CQL2PgJSON> converters = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public PgQueryCache(int maxSize) {
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<String, CompiledCql>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledCql> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    public static PgQueryCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the SQL translation of the query, compiling and caching it on a miss
+     *
+     * @param tenantId - tenant the query runs for
+     * @param table    - table whose jsonb column the query is translated against
+     * @param query    - CQL query, may be null
+     * @return - compiled where and order by clauses
+     */
+    public CompiledCql compile(String tenantId, String table, String query) throws FieldException, QueryValidationException {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            return CompiledCql.EMPTY;
+        }
+        String key = tenantId + '/' + table + '/' + normalized;
+        CompiledCql compiled = entries.get(key);
+        if (compiled != null) {
+            hits.incrementAndGet();
+            return compiled;
+        }
+        misses.incrementAndGet();
+        SqlSelect sql = converter(table).toSql(normalized);
+        compiled = new CompiledCql(sql.getWhere(), sql.getOrderBy());
+        entries.put(key, compiled);
+        return compiled;
+    }
+
+    /**
+     * The converter only holds the field name and is safe to share, so one per table is kept
+     */
+    private CQL2PgJSON converter(String table) throws FieldException {
+        CQL2PgJSON converter = converters.get(table);
+        if (converter == null) {
+            converter = new CQL2PgJSON(table + ".jsonb");
+            converters.putIfAbsent(table, converter);
+        }
+        return converter;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Trims the query and collapses whitespace outside of quoted terms,
+     * so that queries differing only in spacing share one cache entry
+     */
+    static String normalize(String query) {
+        if (query == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(query.length());
+        boolean quoted = false;
+        boolean escaped = false;
+        boolean pendingSpace = false;
+        for (char c : query.trim().toCharArray()) {
+            if (!quoted && Character.isWhitespace(c)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+            sb.append(c);
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == '"') {
+                quoted = !quoted;
+            }
+        }
+        return sb.toString();
+    }
+
+    public static class CompiledCql {
+        static final CompiledCql EMPTY = new CompiledCql("", "");
+
+        private final String where;
+        private final String orderBy;
+
+        CompiledCql(String where, String orderBy) {
+            this.where = where == null ? "" : where;
+            this.orderBy = orderBy == null ? "" : orderBy;
+        }
+
+        public String getWhere() {
+            return this.where;
+        }
+
+        public String getOrderBy() {
+            return this.orderBy;
+        }
+    }
+}
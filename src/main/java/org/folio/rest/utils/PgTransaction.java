@@ -9,6 +9,8 @@ public class PgTransaction<T> {
     public AsyncResult<SQLConnection> sqlConnection;
     public OutStream stream;
     public AsyncResult<String> location;
+    /** id of the entity that conflicts with existing rows; the transaction is rolled back already */
+    public String conflict;
 
     public PgTransaction(T entity) {
         this.entity = entity;
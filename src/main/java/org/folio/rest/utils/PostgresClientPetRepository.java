@@ -0,0 +1,65 @@
+package org.folio.rest.utils;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import org.folio.rest.jaxrs.model.Pet;
+import org.folio.rest.persist.Criteria.Criteria;
+import org.folio.rest.persist.Criteria.Criterion;
+import org.folio.rest.persist.PostgresClient;
+
+/**
+ * Pets by id through RMB's PostgresClient; lookups are batched by the tenant's {@link PetLoader}
+ */
+public class PostgresClientPetRepository implements PetRepository {
+
+    private final PostgresClient pgClient;
+    private final PetLoader petLoader;
+
+    PostgresClientPetRepository(Vertx vertx, String tenantId) {
+        this.pgClient = PostgresClient.getInstance(vertx, tenantId);
+        this.petLoader = PetLoader.forTenant(vertx, tenantId);
+    }
+
+    @Override
+    public Future<Pet> findById(String table, String id) {
+        return petLoader.load(table, id);
+    }
+
+    @Override
+    public Future<Boolean> update(String table, Pet pet) {
+        Future<Boolean> future = Future.future();
+        try {
+            Criteria idCrit = new Criteria();
+            idCrit.addField("'id'");
+            idCrit.setOperation("=");
+            idCrit.setValue(pet.getId());
+            pgClient.update(table, pet, new Criterion(idCrit), true, reply -> {
+                if (reply.succeeded()) {
+                    future.complete(reply.result().getUpdated() > 0);
+                } else {
+                    future.fail(reply.cause());
+                }
+            });
+        } catch (Exception e) {
+            future.fail(e);
+        }
+        return future;
+    }
+
+    @Override
+    public Future<Boolean> delete(String table, String id) {
+        Future<Boolean> future = Future.future();
+        try {
+            pgClient.delete(table, id, reply -> {
+                if (reply.succeeded()) {
+                    future.complete(reply.result().getUpdated() > 0);
+                } else {
+                    future.fail(reply.cause());
+                }
+            });
+        } catch (Exception e) {
+            future.fail(e);
+        }
+        return future;
+    }
+}
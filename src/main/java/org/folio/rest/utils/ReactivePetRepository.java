@@ -0,0 +1,142 @@
+package org.folio.rest.utils;
+
+import io.reactiverse.pgclient.PgClient;
+import io.reactiverse.pgclient.PgPool;
+import io.reactiverse.pgclient.PgPoolOptions;
+import io.reactiverse.pgclient.PgRowSet;
+import io.reactiverse.pgclient.Row;
+import io.reactiverse.pgclient.Tuple;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.folio.rest.jaxrs.model.Pet;
+import org.folio.rest.persist.PostgresClient;
+
+import java.util.UUID;
+
+/**
+ * Pets by id through the reactive Postgres client. Its connections pipeline up to
+ * {@code pets.reactive.pipeliningLimit} statements without waiting for the previous result, and each
+ * connection prepares a statement once and reuses it, so a few connections serve many concurrent lookups.
+ * Lookups are not batched by {@link PetLoader}: pipelining already shares the round trips.
+ */
+public class ReactivePetRepository implements PetRepository {
+    private static final int MAX_POOL_SIZE = Integer.getInteger("pets.reactive.maxPoolSize", 4);
+    private static final int PIPELINING_LIMIT = Integer.getInteger("pets.reactive.pipeliningLimit", 256);
+
+    private static PgPool pool;
+
+    private final PgPool pgPool;
+    private final String schema;
+
+    ReactivePetRepository(Vertx vertx, String tenantId) {
+        this.pgPool = pool(vertx);
+        this.schema = PostgresClient.convertToPsqlStandard(tenantId);
+    }
+
+    /**
+     * One pool for all tenants: they share the database, the tenant only selects the schema. It lives until
+     * {@link TenantContext#closeAll()}, after which the next repository creates a new one on its own Vertx.
+     */
+    private static synchronized PgPool pool(Vertx vertx) {
+        if (pool == null) {
+            JsonObject config = PostgresClient.getInstance(vertx).getConnectionConfig();
+            pool = PgClient.pool(vertx, new PgPoolOptions()
+                .setHost(config.getString("host"))
+                .setPort(config.getInteger("port"))
+                .setDatabase(config.getString("database"))
+                .setUser(config.getString("username"))
+                .setPassword(config.getString("password"))
+                .setMaxSize(MAX_POOL_SIZE)
+                .setPipeliningLimit(PIPELINING_LIMIT)
+                .setCachePreparedStatements(true));
+        }
+        return pool;
+    }
+
+    static synchronized void closePool() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+
+    /**
+     * Looks the pet up by primary key; an id that is not a UUID cannot match any pet
+     */
+    @Override
+    public Future<Pet> findById(String table, String id) {
+        UUID uuid = uuid(id);
+        if (uuid == null) {
+            return Future.succeededFuture(null);
+        }
+        Future<Pet> future = Future.future();
+        pgPool.preparedQuery("SELECT jsonb::text FROM " + schema + "." + table + " WHERE _id = $1",
+            Tuple.of(uuid), reply -> {
+                if (reply.failed()) {
+                    future.fail(reply.cause());
+                    return;
+                }
+                try {
+                    Pet pet = null;
+                    for (Row row : reply.result()) {
+                        pet = new JsonObject(row.getString(0)).mapTo(Pet.class);
+                    }
+                    future.complete(pet);
+                } catch (Exception e) {
+                    future.fail(e);
+                }
+            });
+        return future;
+    }
+
+    @Override
+    public Future<Boolean> update(String table, Pet pet) {
+        UUID uuid = uuid(pet.getId());
+        if (uuid == null) {
+            return Future.succeededFuture(false);
+        }
+        Future<Boolean> future = Future.future();
+        try {
+            // text parameter cast in SQL, so the json needs no client-side jsonb encoding
+            pgPool.preparedQuery("UPDATE " + schema + "." + table + " SET jsonb = $2::text::jsonb WHERE _id = $1",
+                Tuple.of(uuid, PostgresClient.pojo2json(pet)), reply -> complete(future, reply));
+        } catch (Exception e) {
+            future.fail(e);
+        }
+        return future;
+    }
+
+    /**
+     * Deletes by primary key like {@link PostgresClient#delete(String, String, io.vertx.core.Handler)};
+     * an id that is not a UUID cannot match any pet
+     */
+    @Override
+    public Future<Boolean> delete(String table, String id) {
+        UUID uuid = uuid(id);
+        if (uuid == null) {
+            return Future.succeededFuture(false);
+        }
+        Future<Boolean> future = Future.future();
+        pgPool.preparedQuery("DELETE FROM " + schema + "." + table + " WHERE _id = $1",
+            Tuple.of(uuid), reply -> complete(future, reply));
+        return future;
+    }
+
+    private static UUID uuid(String id) {
+        try {
+            return id == null ? null : UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void complete(Future<Boolean> future, AsyncResult<PgRowSet> reply) {
+        if (reply.succeeded()) {
+            future.complete(reply.result().rowCount() > 0);
+        } else {
+            future.fail(reply.cause());
+        }
+    }
+}
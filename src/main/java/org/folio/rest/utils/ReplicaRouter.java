@@ -0,0 +1,258 @@
+package org.folio.rest.utils;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.asyncsql.AsyncSQLClient;
+import io.vertx.ext.asyncsql.PostgreSQLClient;
+import io.vertx.ext.sql.ResultSet;
+import org.folio.rest.persist.PostgresClient;
+
+import javax.ws.rs.core.Response;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends the reads of a tenant to a read replica, configured by {@code pets.replica.host}, {@code .port},
+ * {@code .database}, {@code .username} and {@code .password} (defaults: those of the primary). The replica lag
+ * is probed every {@code pets.replica.lagCheckMillis}, starting with the first read; while it exceeds {@code pets.replica.maxLagMillis},
+ * or the replica cannot be reached, reads go to the primary. With {@code pets.replica.readYourWrites} (default on)
+ * a client that wrote recently reads from the primary too, so it sees its own write; clients are told apart
+ * by their Okapi user id, or their token when there is none. The recent writes are only known to the module
+ * instance that answered them: with several instances behind Okapi, a read that another instance answers
+ * may come from a replica that does not have the write yet.
+ */
+public class ReplicaRouter {
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicaRouter.class);
+    private static final String USER_ID_HEADER = "x-okapi-user-id";
+    private static final String TOKEN_HEADER = "x-okapi-token";
+    private static final String LAG_SQL = "SELECT CASE WHEN NOT pg_is_in_recovery()"
+        + " OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"
+        + " ELSE (extract(epoch FROM now() - pg_last_xact_replay_timestamp()) * 1000)::bigint END";
+
+    private final Vertx vertx;
+    private final PostgresClient primary;
+    private final AsyncSQLClient replica;
+    private final long maxLagMillis = Long.getLong("pets.replica.maxLagMillis", 1000L);
+    private final long lagCheckMillis = Long.getLong("pets.replica.lagCheckMillis", 1000L);
+    private final boolean readYourWrites = Boolean.parseBoolean(System.getProperty("pets.replica.readYourWrites", "true"));
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+    private volatile long lagMillis = Long.MAX_VALUE;
+    private final AtomicBoolean lagChecks = new AtomicBoolean();
+    private volatile long lagTimerId = -1;
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final AtomicLong primaryReads = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    public ReplicaRouter(Vertx vertx, PostgresClient primary) {
+        this.vertx = vertx;
+        this.primary = primary;
+        String host = System.getProperty("pets.replica.host");
+        if (host == null) {
+            this.replica = null;
+            return;
+        }
+        JsonObject primaryConfig = primary.getConnectionConfig();
+        JsonObject config = new JsonObject()
+            .put("host", host)
+            .put("port", Integer.getInteger("pets.replica.port", primaryConfig.getInteger("port")))
+            .put("database", System.getProperty("pets.replica.database", primaryConfig.getString("database")))
+            .put("username", System.getProperty("pets.replica.username", primaryConfig.getString("username")))
+            .put("password", System.getProperty("pets.replica.password", primaryConfig.getString("password")))
+            .put("maxPoolSize", Integer.getInteger("pets.replica.maxPoolSize", 5));
+        this.replica = PostgreSQLClient.createNonShared(vertx, config);
+    }
+
+    public boolean isEnabled() {
+        return replica != null;
+    }
+
+    /**
+     * Wraps the response handler of a write so that the client reads from the primary for a while
+     * after the write has been answered
+     */
+    public Handler<AsyncResult<Response>> afterWrite(Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> handler) {
+        String client = client(okapiHeaders);
+        if (!isEnabled() || !readYourWrites || client == null) {
+            return handler;
+        }
+        return res -> {
+            lastWrites.put(client, System.currentTimeMillis());
+            handler.handle(res);
+        };
+    }
+
+    /**
+     * Picks where the reads of a request go; decided once so that all of them see the same database
+     */
+    public Reader reader(Map<String, String> okapiHeaders) {
+        if (isEnabled() && lagChecks.compareAndSet(false, true)) {
+            checkLag();
+            lagTimerId = vertx.setPeriodic(lagCheckMillis, id -> checkLag());
+        }
+        if (!isEnabled() || lagMillis > maxLagMillis || wroteRecently(client(okapiHeaders))) {
+            return new Reader(false);
+        }
+        return new Reader(true);
+    }
+
+    /**
+     * Stops the lag checks and closes the replica connections
+     */
+    public void close() {
+        if (lagTimerId != -1) {
+            vertx.cancelTimer(lagTimerId);
+        }
+        if (replica != null) {
+            replica.close();
+        }
+    }
+
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    public long getReplicaReads() {
+        return replicaReads.get();
+    }
+
+    public long getPrimaryReads() {
+        return primaryReads.get();
+    }
+
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+
+    /**
+     * A write is visible on the replica once the replica is less than the maximum lag behind, and the lag
+     * is known at the latest one check later
+     */
+    private boolean wroteRecently(String client) {
+        if (client == null) {
+            return false;
+        }
+        Long lastWrite = lastWrites.get(client);
+        if (lastWrite == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - lastWrite <= maxLagMillis + lagCheckMillis) {
+            return true;
+        }
+        lastWrites.remove(client, lastWrite);
+        return false;
+    }
+
+    private void checkLag() {
+        long now = System.currentTimeMillis();
+        lastWrites.values().removeIf(lastWrite -> now - lastWrite > maxLagMillis + lagCheckMillis);
+        query(LAG_SQL, null, reply -> {
+            if (reply.failed()) {
+                if (lagMillis != Long.MAX_VALUE) {
+                    LOG.warn("Replica unavailable, reading from the primary", reply.cause());
+                }
+                lagMillis = Long.MAX_VALUE;
+                return;
+            }
+            lagMillis = reply.result().getResults().get(0).getLong(0);
+        });
+    }
+
+    private void query(String sql, JsonArray params, Handler<AsyncResult<ResultSet>> handler) {
+        replica.getConnection(connection -> {
+            if (connection.failed()) {
+                handler.handle(Future.failedFuture(connection.cause()));
+                return;
+            }
+            Handler<AsyncResult<ResultSet>> closing = reply -> {
+                connection.result().close();
+                handler.handle(reply);
+            };
+            if (params == null) {
+                connection.result().query(sql, closing);
+            } else {
+                connection.result().queryWithParams(sql, params, closing);
+            }
+        });
+    }
+
+    private static String client(Map<String, String> okapiHeaders) {
+        String token = null;
+        for (Map.Entry<String, String> header : okapiHeaders.entrySet()) {
+            if (USER_ID_HEADER.equalsIgnoreCase(header.getKey())) {
+                return "user:" + header.getValue();
+            }
+            if (TOKEN_HEADER.equalsIgnoreCase(header.getKey())) {
+                token = "token:" + header.getValue();
+            }
+        }
+        return token;
+    }
+
+    /**
+     * Reads of one request
+     */
+    public class Reader {
+        private final boolean useReplica;
+
+        private Reader(boolean useReplica) {
+            this.useReplica = useReplica;
+        }
+
+        /**
+         * @return - true if the reads go to the replica, whose results may be behind the primary
+         */
+        public boolean isReplica() {
+            return useReplica;
+        }
+
+        /**
+         * Runs the select on the replica, or on the primary when the replica is not used or fails
+         */
+        public Future<ResultSet> select(String sql) {
+            return select(sql, null);
+        }
+
+        /**
+         * Runs the select with {@code ?} placeholders bound to the params, see {@link #select(String)}
+         */
+        public Future<ResultSet> select(String sql, JsonArray params) {
+            Future<ResultSet> future = Future.future();
+            if (!useReplica) {
+                primaryReads.incrementAndGet();
+                selectPrimary(sql, params, future);
+                return future;
+            }
+            query(sql, params, reply -> {
+                if (reply.succeeded()) {
+                    replicaReads.incrementAndGet();
+                    future.complete(reply.result());
+                } else {
+                    LOG.warn("Replica read failed, retrying on the primary", reply.cause());
+                    fallbacks.incrementAndGet();
+                    selectPrimary(sql, params, future);
+                }
+            });
+            return future;
+        }
+
+        private void selectPrimary(String sql, JsonArray params, Future<ResultSet> future) {
+            if (params != null) {
+                PgParams.query(primary, sql, params).setHandler(future.completer());
+                return;
+            }
+            try {
+                primary.select(sql, future.completer());
+            } catch (Exception e) {
+                future.fail(e);
+            }
+        }
+    }
+}
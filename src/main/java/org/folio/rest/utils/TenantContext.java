@@ -0,0 +1,123 @@
+package org.folio.rest.utils;
+
+import io.vertx.core.Vertx;
+import org.folio.rest.persist.PostgresClient;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resources of a tenant that outlive a request. RMB constructs the resource implementations for every
+ * request, so they take their Postgres client, caches and loader from here instead of looking them up again.
+ * Creating a context starts nothing: the background work of all tenants is run by {@link PetServices}.
+ */
+public class TenantContext {
+    private static final String HOMELESS_PETS_TABLE_NAME = "homeless_pets";
+    private static final Map<String, TenantContext> CONTEXTS = new ConcurrentHashMap<>();
+
+    private final String tenantId;
+    private final PostgresClient pgClient;
+    private final PetCache petCache;
+    private final PetLoader petLoader;
+    private final PetRepository petRepository;
+    private final ConcurrencyLimiter limiter;
+    private final PetWriteBehind writeBehind;
+    private final ReplicaRouter replicaRouter;
+    private final PetArchiver archiver;
+    private final PetChangePruner changePruner;
+
+    private TenantContext(Vertx vertx, String tenantId) {
+        this.tenantId = tenantId;
+        this.pgClient = PostgresClient.getInstance(vertx, tenantId);
+        this.petCache = PetCache.forTenant(tenantId);
+        this.petLoader = PetLoader.forTenant(vertx, tenantId);
+        this.petRepository = PetRepository.forTenant(vertx, tenantId);
+        this.limiter = ConcurrencyLimiter.forTenant(tenantId);
+        this.writeBehind = new PetWriteBehind(vertx, tenantId, HOMELESS_PETS_TABLE_NAME);
+        this.replicaRouter = new ReplicaRouter(vertx, pgClient);
+        this.archiver = new PetArchiver(tenantId, pgClient);
+        this.changePruner = new PetChangePruner(tenantId, pgClient);
+    }
+
+    public static TenantContext forTenant(Vertx vertx, String tenantId) {
+        // plain get first: on Java 8 computeIfAbsent locks the bin even when the key is present
+        TenantContext context = CONTEXTS.get(tenantId);
+        return context != null ? context : CONTEXTS.computeIfAbsent(tenantId, tenant -> new TenantContext(vertx, tenant));
+    }
+
+    public String getTenantId() {
+        return this.tenantId;
+    }
+
+    public PostgresClient getPgClient() {
+        return this.pgClient;
+    }
+
+    public PetCache getPetCache() {
+        return this.petCache;
+    }
+
+    public PetLoader getPetLoader() {
+        return this.petLoader;
+    }
+
+    /**
+     * @return - pets by id through the data access layer selected by {@code pets.repository}
+     */
+    public PetRepository getPetRepository() {
+        return this.petRepository;
+    }
+
+    public ConcurrencyLimiter getLimiter() {
+        return this.limiter;
+    }
+
+    /**
+     * @return - write-behind queue for updates of homeless pets
+     */
+    public PetWriteBehind getWriteBehind() {
+        return this.writeBehind;
+    }
+
+    /**
+     * @return - router of reads to the read replica, or to the primary if there is none
+     */
+    public ReplicaRouter getReplicaRouter() {
+        return this.replicaRouter;
+    }
+
+    /**
+     * @return - mover of old adoptions into the partitioned archive
+     */
+    public PetArchiver getArchiver() {
+        return this.archiver;
+    }
+
+    /**
+     * @return - deleter of old entries of the pet change log
+     */
+    public PetChangePruner getChangePruner() {
+        return this.changePruner;
+    }
+
+    public static Map<String, TenantContext> all() {
+        return CONTEXTS;
+    }
+
+    /**
+     * Closes the contexts of all tenants, so that the next request creates them on its own Vertx
+     */
+    public static void closeAll() {
+        CONTEXTS.values().forEach(context -> context.replicaRouter.close());
+        CONTEXTS.clear();
+        PetLoader.all().clear();
+        ReactivePetRepository.closePool();
+    }
+
+    /**
+     * @return - builder of a query on the table for this tenant
+     */
+    public PgQuery.PgQueryBuilder query(String[] fields, String table) {
+        return new PgQuery.PgQueryBuilder(fields, table).tenant(this.tenantId);
+    }
+}
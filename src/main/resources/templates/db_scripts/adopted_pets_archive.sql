@@ -0,0 +1,132 @@
+-- Adoptions older than a cut-off move from adopted_pets into adopted_pets_archive, range partitioned by the
+-- month of adopted_at. Every insert into adopted_pets is an adoption, so the column default stamps both
+-- adoption paths of PetsImpl; adoptions made before the column existed count as adopted when it was added.
+-- adopted_pets stays a plain table: Postgres 10 partitioned tables cannot carry its primary key, unique genus
+-- index or row triggers.
+ALTER TABLE ${myuniversity}_${mymodule}.adopted_pets ADD COLUMN IF NOT EXISTS adopted_at timestamptz NOT NULL DEFAULT now();
+CREATE INDEX IF NOT EXISTS adopted_pets_adopted_at_idx ON ${myuniversity}_${mymodule}.adopted_pets (adopted_at);
+
+CREATE TABLE IF NOT EXISTS ${myuniversity}_${mymodule}.adopted_pets_archive (
+  _id uuid NOT NULL,
+  jsonb jsonb NOT NULL,
+  adopted_at timestamptz NOT NULL,
+  archived_at timestamptz NOT NULL DEFAULT now()
+) PARTITION BY RANGE (adopted_at);
+
+-- Partitions are named adopted_pets_archive_pYYYYMM; indexes are created per partition.
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.create_adopted_pets_archive_partition(month_start timestamptz)
+RETURNS void AS $$
+DECLARE
+  part_name text := 'adopted_pets_archive_p' || to_char(month_start, 'YYYYMM');
+BEGIN
+  IF to_regclass(format('%I.%I', '${myuniversity}_${mymodule}', part_name)) IS NOT NULL THEN
+    RETURN;
+  END IF;
+  EXECUTE format('CREATE TABLE %I.%I PARTITION OF %I.adopted_pets_archive FOR VALUES FROM (%L) TO (%L)',
+    '${myuniversity}_${mymodule}', part_name, '${myuniversity}_${mymodule}', month_start, month_start + interval '1 month');
+  EXECUTE format('CREATE INDEX ON %I.%I (_id)', '${myuniversity}_${mymodule}', part_name);
+  EXECUTE format('CREATE INDEX ON %I.%I ((lower(f_unaccent(jsonb->>''genus''))))', '${myuniversity}_${mymodule}', part_name);
+END;
+$$ LANGUAGE plpgsql;
+
+-- archived adoptions are looked up by _id and genus; partitions created before indexed jsonb->>'id'
+DO $$
+DECLARE
+  part record;
+BEGIN
+  FOR part IN
+    SELECT child.relname
+      FROM pg_inherits
+      JOIN pg_class child ON child.oid = pg_inherits.inhrelid
+      WHERE pg_inherits.inhparent = '${myuniversity}_${mymodule}.adopted_pets_archive'::regclass
+  LOOP
+    EXECUTE format('CREATE INDEX IF NOT EXISTS %I ON %I.%I (_id)', part.relname || '_id_idx', '${myuniversity}_${mymodule}', part.relname);
+    EXECUTE format('CREATE INDEX IF NOT EXISTS %I ON %I.%I ((lower(f_unaccent(jsonb->>''genus''))))',
+      part.relname || '_genus_idx', '${myuniversity}_${mymodule}', part.relname);
+  END LOOP;
+END;
+$$;
+
+-- The unique genus index of adopted_pets cannot see the archive, so the trigger extends it: a genus in an
+-- attached archive partition cannot be adopted again, the insert fails like a duplicate genus (SQLSTATE 23505).
+-- Detached partitions are no longer adoptions. The shared lock waits for an archive run to commit, and the run
+-- waits for adoptions in flight, so a genus cannot slip between the two tables.
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.check_genus_not_archived() RETURNS trigger AS $$
+BEGIN
+  PERFORM pg_advisory_xact_lock_shared(hashtext('${myuniversity}_${mymodule}.adopted_pets_genus'));
+  IF EXISTS (SELECT 1 FROM ${myuniversity}_${mymodule}.adopted_pets_archive
+      WHERE lower(f_unaccent(jsonb->>'genus')) = lower(f_unaccent(NEW.jsonb->>'genus'))) THEN
+    RAISE unique_violation USING MESSAGE = format('genus %s is adopted already (adopted_pets_archive)', NEW.jsonb->>'genus');
+  END IF;
+  RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS check_genus_not_archived ON ${myuniversity}_${mymodule}.adopted_pets;
+CREATE TRIGGER check_genus_not_archived BEFORE INSERT OR UPDATE OF jsonb ON ${myuniversity}_${mymodule}.adopted_pets
+  FOR EACH ROW EXECUTE PROCEDURE ${myuniversity}_${mymodule}.check_genus_not_archived();
+
+-- Moves the adoptions made before now() - older_than into the archive, creates the partitions of the
+-- premake months starting at the cut-off ahead of time and detaches the partitions that ended before
+-- now() - retention (null keeps them all). Detached partitions remain as standalone tables to be dumped or
+-- dropped. Concurrent calls for the same tenant return at once without doing anything.
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.archive_adopted_pets(older_than interval, retention interval, premake integer)
+RETURNS jsonb AS $$
+DECLARE
+  cutoff timestamptz := now() - older_than;
+  months timestamptz[];
+  month_start timestamptz;
+  archived bigint;
+  detached jsonb := '[]'::jsonb;
+  part record;
+BEGIN
+  IF NOT pg_try_advisory_xact_lock(hashtext('${myuniversity}_${mymodule}.adopted_pets_archive')) THEN
+    RETURN jsonb_build_object('archived', 0, 'detached', detached);
+  END IF;
+  -- see check_genus_not_archived
+  PERFORM pg_advisory_xact_lock(hashtext('${myuniversity}_${mymodule}.adopted_pets_genus'));
+
+  FOR i IN 0 .. premake - 1 LOOP
+    PERFORM ${myuniversity}_${mymodule}.create_adopted_pets_archive_partition(date_trunc('month', cutoff) + i * interval '1 month');
+  END LOOP;
+
+  SELECT array_agg(DISTINCT date_trunc('month', adopted_at)) INTO months
+    FROM ${myuniversity}_${mymodule}.adopted_pets
+    WHERE adopted_at < cutoff;
+  FOREACH month_start IN ARRAY coalesce(months, '{}') LOOP
+    PERFORM ${myuniversity}_${mymodule}.create_adopted_pets_archive_partition(month_start);
+  END LOOP;
+
+  -- moving is not a change of the pets, keep it out of the change feed
+  PERFORM set_config('pets.archiving', 'on', true);
+  -- only the months partitioned above: rows committed meanwhile may need a partition that does not exist yet
+  WITH moved AS (
+    DELETE FROM ${myuniversity}_${mymodule}.adopted_pets
+      WHERE adopted_at < cutoff
+        AND date_trunc('month', adopted_at) = ANY (coalesce(months, '{}'))
+      RETURNING _id, jsonb, adopted_at
+  )
+  INSERT INTO ${myuniversity}_${mymodule}.adopted_pets_archive (_id, jsonb, adopted_at)
+    SELECT _id, jsonb, adopted_at FROM moved;
+  GET DIAGNOSTICS archived = ROW_COUNT;
+  PERFORM set_config('pets.archiving', 'off', true);
+
+  IF retention IS NOT NULL THEN
+    FOR part IN
+      SELECT child.relname
+        FROM pg_inherits
+        JOIN pg_class child ON child.oid = pg_inherits.inhrelid
+        WHERE pg_inherits.inhparent = '${myuniversity}_${mymodule}.adopted_pets_archive'::regclass
+          AND to_timestamp(substring(child.relname FROM '_p([0-9]{6})$'), 'YYYYMM') + interval '1 month'
+            <= date_trunc('month', now() - retention)
+        ORDER BY child.relname
+    LOOP
+      EXECUTE format('ALTER TABLE %I.adopted_pets_archive DETACH PARTITION %I.%I',
+        '${myuniversity}_${mymodule}', '${myuniversity}_${mymodule}', part.relname);
+      detached := detached || to_jsonb(part.relname::text);
+    END LOOP;
+  END IF;
+
+  RETURN jsonb_build_object('archived', archived, 'detached', detached);
+END;
+$$ LANGUAGE plpgsql;
@@ -0,0 +1,49 @@
+-- Append-only log of pet changes, written by triggers in the transaction of the change.
+-- seq stays null until a reader numbers the committed rows in commit order, see PetChangesImpl.
+CREATE SEQUENCE IF NOT EXISTS ${myuniversity}_${mymodule}.pet_changes_seq;
+
+CREATE TABLE IF NOT EXISTS ${myuniversity}_${mymodule}.pet_changes (
+  id bigserial PRIMARY KEY,
+  seq bigint UNIQUE,
+  changed_at timestamptz NOT NULL DEFAULT now(),
+  table_name text NOT NULL,
+  pet_id text NOT NULL,
+  operation text NOT NULL,
+  jsonb jsonb
+);
+
+CREATE INDEX IF NOT EXISTS pet_changes_unsequenced_idx
+  ON ${myuniversity}_${mymodule}.pet_changes (id) WHERE seq IS NULL;
+
+-- old changes are deleted by PetChangePruner
+CREATE INDEX IF NOT EXISTS pet_changes_changed_at_idx
+  ON ${myuniversity}_${mymodule}.pet_changes (changed_at);
+
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.log_pet_change() RETURNS trigger AS $$
+BEGIN
+  -- rows moved to adopted_pets_archive, see archive_adopted_pets
+  IF current_setting('pets.archiving', true) = 'on' THEN
+    RETURN NULL;
+  END IF;
+  IF TG_OP = 'DELETE' THEN
+    INSERT INTO ${myuniversity}_${mymodule}.pet_changes (table_name, pet_id, operation, jsonb)
+      VALUES (TG_TABLE_NAME, OLD.jsonb->>'id', 'delete', NULL);
+  ELSE
+    INSERT INTO ${myuniversity}_${mymodule}.pet_changes (table_name, pet_id, operation, jsonb)
+      VALUES (TG_TABLE_NAME, NEW.jsonb->>'id',
+        CASE WHEN TG_OP = 'UPDATE' THEN 'update' WHEN TG_TABLE_NAME = 'adopted_pets' THEN 'adopt' ELSE 'create' END,
+        NEW.jsonb);
+  END IF;
+  -- one notification per schema and transaction, identical payloads are folded on commit
+  PERFORM pg_notify('pet_changes', TG_TABLE_SCHEMA);
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS log_pet_change ON ${myuniversity}_${mymodule}.homeless_pets;
+CREATE TRIGGER log_pet_change AFTER INSERT OR UPDATE OR DELETE ON ${myuniversity}_${mymodule}.homeless_pets
+  FOR EACH ROW EXECUTE PROCEDURE ${myuniversity}_${mymodule}.log_pet_change();
+
+DROP TRIGGER IF EXISTS log_pet_change ON ${myuniversity}_${mymodule}.adopted_pets;
+CREATE TRIGGER log_pet_change AFTER INSERT OR UPDATE OR DELETE ON ${myuniversity}_${mymodule}.adopted_pets
+  FOR EACH ROW EXECUTE PROCEDURE ${myuniversity}_${mymodule}.log_pet_change();
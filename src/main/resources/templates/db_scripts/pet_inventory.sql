@@ -0,0 +1,71 @@
+-- Number of homeless pets and their total quantity per genus, maintained by statement-level triggers
+-- in the transaction of every write to homeless_pets. Rebuilt from homeless_pets by PetInventoryImpl.
+-- Genera are keyed as the unique genus index compares them, lower case and without accents.
+CREATE TABLE IF NOT EXISTS ${myuniversity}_${mymodule}.pet_inventory (
+  genus text PRIMARY KEY,
+  pets bigint NOT NULL,
+  quantity bigint NOT NULL
+);
+
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.update_pet_inventory() RETURNS trigger AS $$
+DECLARE
+  deltas jsonb;
+BEGIN
+  -- transition tables exist only for the operations of the trigger, so each branch reads its own
+  IF TG_OP = 'INSERT' THEN
+    SELECT jsonb_agg(jsonb_build_object('genus', lower(f_unaccent(jsonb->>'genus')), 'pets', 1, 'quantity', coalesce((jsonb->>'quantity')::bigint, 0)))
+      INTO deltas FROM new_rows;
+  ELSIF TG_OP = 'DELETE' THEN
+    SELECT jsonb_agg(jsonb_build_object('genus', lower(f_unaccent(jsonb->>'genus')), 'pets', -1, 'quantity', -coalesce((jsonb->>'quantity')::bigint, 0)))
+      INTO deltas FROM old_rows;
+  ELSE
+    SELECT jsonb_agg(delta) INTO deltas FROM (
+      SELECT jsonb_build_object('genus', lower(f_unaccent(jsonb->>'genus')), 'pets', 1, 'quantity', coalesce((jsonb->>'quantity')::bigint, 0)) AS delta FROM new_rows
+      UNION ALL
+      SELECT jsonb_build_object('genus', lower(f_unaccent(jsonb->>'genus')), 'pets', -1, 'quantity', -coalesce((jsonb->>'quantity')::bigint, 0)) FROM old_rows
+    ) AS deltas;
+  END IF;
+  IF deltas IS NULL THEN
+    RETURN NULL;
+  END IF;
+  -- one row per genus in genus order, so concurrent writers lock the inventory rows in the same order
+  INSERT INTO ${myuniversity}_${mymodule}.pet_inventory AS inventory (genus, pets, quantity)
+    SELECT genus, sum(pets), sum(quantity)
+      FROM jsonb_to_recordset(deltas) AS delta(genus text, pets bigint, quantity bigint)
+      WHERE genus IS NOT NULL
+      GROUP BY genus
+      HAVING sum(pets) <> 0 OR sum(quantity) <> 0
+      ORDER BY genus
+    ON CONFLICT (genus) DO UPDATE
+      SET pets = inventory.pets + EXCLUDED.pets, quantity = inventory.quantity + EXCLUDED.quantity;
+  DELETE FROM ${myuniversity}_${mymodule}.pet_inventory
+    WHERE pets = 0 AND genus IN (SELECT genus FROM jsonb_to_recordset(deltas) AS delta(genus text));
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS update_pet_inventory_insert ON ${myuniversity}_${mymodule}.homeless_pets;
+CREATE TRIGGER update_pet_inventory_insert AFTER INSERT ON ${myuniversity}_${mymodule}.homeless_pets
+  REFERENCING NEW TABLE AS new_rows
+  FOR EACH STATEMENT EXECUTE PROCEDURE ${myuniversity}_${mymodule}.update_pet_inventory();
+
+DROP TRIGGER IF EXISTS update_pet_inventory_update ON ${myuniversity}_${mymodule}.homeless_pets;
+CREATE TRIGGER update_pet_inventory_update AFTER UPDATE ON ${myuniversity}_${mymodule}.homeless_pets
+  REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+  FOR EACH STATEMENT EXECUTE PROCEDURE ${myuniversity}_${mymodule}.update_pet_inventory();
+
+DROP TRIGGER IF EXISTS update_pet_inventory_delete ON ${myuniversity}_${mymodule}.homeless_pets;
+CREATE TRIGGER update_pet_inventory_delete AFTER DELETE ON ${myuniversity}_${mymodule}.homeless_pets
+  REFERENCING OLD TABLE AS old_rows
+  FOR EACH STATEMENT EXECUTE PROCEDURE ${myuniversity}_${mymodule}.update_pet_inventory();
+
+-- genera counted before they were keyed like the unique index are counted again below
+DELETE FROM ${myuniversity}_${mymodule}.pet_inventory WHERE genus <> lower(f_unaccent(genus));
+
+-- count the pets that existed before the triggers
+INSERT INTO ${myuniversity}_${mymodule}.pet_inventory (genus, pets, quantity)
+  SELECT lower(f_unaccent(jsonb->>'genus')), count(*), coalesce(sum((jsonb->>'quantity')::bigint), 0)
+    FROM ${myuniversity}_${mymodule}.homeless_pets
+    WHERE jsonb->>'genus' IS NOT NULL
+    GROUP BY 1
+  ON CONFLICT (genus) DO NOTHING;
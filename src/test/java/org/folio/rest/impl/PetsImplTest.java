@@ -3,8 +3,12 @@ package org.folio.rest.impl;
 import io.restassured.RestAssured;
 import io.restassured.http.Header;
 import io.restassured.response.Response;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Context;
 import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
@@ -16,6 +20,17 @@ import org.folio.rest.jaxrs.model.Pet;
 import org.folio.rest.persist.Criteria.Criterion;
 import org.folio.rest.persist.PostgresClient;
 import org.folio.rest.tools.utils.NetworkUtils;
+import org.folio.rest.utils.ConcurrencyLimiter;
+import org.folio.rest.utils.LatencyMetrics;
+import org.folio.rest.utils.PetCache;
+import org.folio.rest.utils.PetInvalidationBus;
+import org.folio.rest.utils.PetLoader;
+import org.folio.rest.utils.PetRepository;
+import org.folio.rest.utils.PetWriteBehind;
+import org.folio.rest.utils.PgQueryCache;
+import org.folio.rest.utils.ReplicaRouter;
+import org.folio.rest.utils.TenantContext;
+import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.Before;
@@ -23,14 +38,39 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.rules.Timeout;
 import org.junit.runner.RunWith;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import ru.yandex.qatools.embed.postgresql.EmbeddedPostgres;
+import ru.yandex.qatools.embed.postgresql.distribution.Version;
 
 import javax.ws.rs.core.MediaType;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 
 @RunWith(VertxUnitRunner.class)
 public class PetsImplTest {
@@ -40,6 +80,7 @@ public class PetsImplTest {
   private static final String TENANT = "diku";
   private static final String HOMELESS_PETS_TABLE_NAME = "homeless_pets";
   private static final String ADOPTED_PETS_TABLE_NAME = "adopted_pets";
+  private static final String LIMITER_TENANT = "limiter_test";
   private static final Header TENANT_HEADER = new Header(RestVerticle.OKAPI_HEADER_TENANT, TENANT);
 
   private static Vertx vertx;
@@ -65,6 +106,8 @@ public class PetsImplTest {
     Async async = context.async();
     vertx = Vertx.vertx();
     port = NetworkUtils.nextFreePort();
+    System.setProperty("pets.export.maxBytes", "4096");
+    System.setProperty("pets.limiter.enabled", "true");
     PostgresClient.setIsEmbedded(true);
     PostgresClient.getInstance(vertx).startEmbeddedPostgres();
     TenantClient tenantClient = new TenantClient("localhost", port, TENANT, "diku");
@@ -89,8 +132,14 @@ public class PetsImplTest {
     }));
   }
 
+  @After
+  public void removeTestLimiter() {
+    ConcurrencyLimiter.all().remove(LIMITER_TENANT);
+  }
+
   @Before
   public void clearPets(TestContext context) throws Exception {
+    PetCache.forTenant(TENANT).clear();
     PostgresClient.getInstance(vertx, TENANT).delete(HOMELESS_PETS_TABLE_NAME, new Criterion(), event -> {
       if (event.failed()) {
         context.fail(event.cause());
@@ -101,6 +150,7 @@ public class PetsImplTest {
         context.fail(event.cause());
       }
     });
+    executeSql("DELETE FROM " + PostgresClient.convertToPsqlStandard(TENANT) + ".adopted_pets_archive");
   }
 
   @Test
@@ -143,6 +193,188 @@ public class PetsImplTest {
       .body("pets*.genus", contains(petsGenuses));
   }
 
+  @Test
+  public void shouldCountAllMatchingPetsBeyondPage(final TestContext context) {
+    List<JsonObject> petsToPost = Arrays.asList(PET1, PET2, PET3);
+    for (JsonObject pet : petsToPost) {
+      RestAssured.given()
+        .port(port)
+        .contentType(MediaType.APPLICATION_JSON)
+        .header(TENANT_HEADER)
+        .body(pet.toString())
+        .when()
+        .post(PETS_PATH)
+        .then()
+        .statusCode(HttpStatus.SC_CREATED);
+    }
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("limit", 1)
+      .when()
+      .get(PETS_PATH)
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("totalRecords", is(petsToPost.size()))
+      .body("pets", hasSize(1));
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("limit", 1)
+      .queryParam("totalRecords", "estimate")
+      .when()
+      .get(PETS_PATH)
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("totalRecords", greaterThanOrEqualTo(1))
+      .body("pets", hasSize(1));
+
+    // past the last page, through the RMB and the projected select
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("offset", 5)
+      .when()
+      .get(PETS_PATH)
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("totalRecords", is(petsToPost.size()))
+      .body("pets", empty());
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("offset", 5)
+      .queryParam("fields", "id,genus")
+      .when()
+      .get(PETS_PATH)
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("totalRecords", is(petsToPost.size()))
+      .body("pets", empty());
+  }
+
+  @Test
+  public void shouldPageThroughPetsByCursor(final TestContext context) {
+    List<JsonObject> petsToPost = Arrays.asList(PET1, PET2, PET3);
+    for (JsonObject pet : petsToPost) {
+      RestAssured.given()
+        .port(port)
+        .contentType(MediaType.APPLICATION_JSON)
+        .header(TENANT_HEADER)
+        .body(pet.toString())
+        .when()
+        .post(PETS_PATH)
+        .then()
+        .statusCode(HttpStatus.SC_CREATED);
+    }
+
+    Response firstPage = RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("limit", 2)
+      .queryParam("cursor", "")
+      .when()
+      .get(PETS_PATH);
+    Assert.assertThat(firstPage.statusCode(), is(HttpStatus.SC_OK));
+    Assert.assertThat(firstPage.jsonPath().getList("pets"), hasSize(2));
+    // estimated for all matching pets, never less than the page
+    Assert.assertThat(firstPage.jsonPath().getInt("totalRecords"), greaterThanOrEqualTo(2));
+    String nextCursor = firstPage.jsonPath().getString("nextCursor");
+    Assert.assertThat(nextCursor, notNullValue());
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("limit", 2)
+      .queryParam("cursor", nextCursor)
+      .when()
+      .get(PETS_PATH)
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("pets", hasSize(1))
+      .body("nextCursor", nullValue());
+  }
+
+  @Test
+  public void shouldReturnBadRequestForInvalidCursor(final TestContext context) {
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("cursor", "not-a-cursor")
+      .when()
+      .get(PETS_PATH)
+      .then()
+      .statusCode(HttpStatus.SC_BAD_REQUEST);
+  }
+
+  @Test
+  public void shouldReturnOnlyRequestedFields(final TestContext context) {
+    RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(PET1.copy().put("notes", "Very long notes").toString())
+      .when()
+      .post(PETS_PATH)
+      .then()
+      .statusCode(HttpStatus.SC_CREATED);
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("fields", "id,genus")
+      .when()
+      .get(PETS_PATH)
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("totalRecords", is(1))
+      .body("pets[0].id", notNullValue())
+      .body("pets[0].genus", is(PET1.getString("genus")))
+      .body("pets[0].quantity", nullValue())
+      .body("pets[0].notes", nullValue());
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("fields", "genus,owner")
+      .when()
+      .get(PETS_PATH)
+      .then()
+      .statusCode(HttpStatus.SC_BAD_REQUEST);
+  }
+
+  @Test
+  public void shouldReuseCompiledQueryForRepeatedSearch(final TestContext context) {
+    List<JsonObject> petsToPost = Arrays.asList(PET1, PET2);
+    for (JsonObject pet : petsToPost) {
+      RestAssured.given()
+        .port(port)
+        .contentType(MediaType.APPLICATION_JSON)
+        .header(TENANT_HEADER)
+        .body(pet.toString())
+        .when()
+        .post(PETS_PATH)
+        .then()
+        .statusCode(HttpStatus.SC_CREATED);
+    }
+
+    long hitsBefore = PgQueryCache.getInstance().getHits();
+    for (String query : Arrays.asList("genus=Canis", "  genus=Canis ")) {
+      RestAssured.given()
+        .port(port)
+        .header(TENANT_HEADER)
+        .queryParam("query", query)
+        .when()
+        .get(PETS_PATH)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("pets*.genus", contains(PET1.getString("genus")));
+    }
+    Assert.assertThat(PgQueryCache.getInstance().getHits(), greaterThan(hitsBefore));
+  }
+
   @Test
   public void shouldReturnBadRequestOnPostWhenNoPetPassedInBody(final TestContext context) {
     RestAssured.given()
@@ -171,6 +403,38 @@ public class PetsImplTest {
       .body("quantity", is(PET1.getInteger("quantity")));
   }
 
+  @Test
+  public void shouldCreatePetsInBatchAndReportConflicts(final TestContext context) {
+    JsonObject batch = new JsonObject()
+      .put("pets", new JsonArray().add(PET1).add(PET2).add(PET1.copy()))
+      .put("totalRecords", 3);
+
+    RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(batch.toString())
+      .when()
+      .post(PETS_PATH + "/batch")
+      .then()
+      .statusCode(HttpStatus.SC_CREATED)
+      .body("totalRecords", is(3))
+      .body("created", is(2))
+      .body("conflicts", is(1))
+      .body("items*.status", contains("created", "created", "conflict"))
+      .body("items[2].message", containsString("homeless_pets_genus_idx_unique"));
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .when()
+      .get(PETS_PATH)
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("totalRecords", is(2))
+      .body("pets.metadata.createdDate", everyItem(notNullValue()));
+  }
+
   @Test
   public void shouldReturnBadRequestOnPutWhenNoPetPassedInBody(final TestContext context) {
     RestAssured.given()
@@ -242,113 +506,502 @@ public class PetsImplTest {
   }
 
   @Test
-  public void shouldReturnNotFoundOnGetPetByIdWhenPetDoesNotExist(final TestContext context) {
-    RestAssured.given()
+  public void shouldFailOnlyTheConflictingWritesOfAWriteBehindBatch(final TestContext context) {
+    Pet boas = RestAssured.given()
       .port(port)
       .contentType(MediaType.APPLICATION_JSON)
       .header(TENANT_HEADER)
-      .pathParam("id", "nonexistent_pet_id")
+      .body(PET3.toString())
       .when()
-      .get(PETS_PATH + "/{id}")
-      .then()
-      .statusCode(HttpStatus.SC_NOT_FOUND);
-  }
-
-  @Test
-  public void shouldReturnPetById(final TestContext context) {
-
-    Response response = RestAssured.given()
+      .post(PETS_PATH)
+      .body().as(Pet.class);
+    Pet panthera = RestAssured.given()
       .port(port)
       .contentType(MediaType.APPLICATION_JSON)
       .header(TENANT_HEADER)
-      .body(PET1.toString())
+      .body(PET2.toString())
       .when()
-      .post(PETS_PATH);
-    Assert.assertThat(response.statusCode(), is(HttpStatus.SC_CREATED));
-    Pet createdPet = response.body().as(Pet.class);
+      .post(PETS_PATH)
+      .body().as(Pet.class);
+
+    Async async = context.async();
+    PetWriteBehind writeBehind = TenantContext.forTenant(vertx, TENANT).getWriteBehind();
+    vertx.runOnContext(v -> {
+      Pet moreBoas = new Pet();
+      moreBoas.setId(boas.getId());
+      moreBoas.setGenus(boas.getGenus());
+      moreBoas.setQuantity(24);
+      Pet duplicateGenus = new Pet();
+      duplicateGenus.setId(panthera.getId());
+      duplicateGenus.setGenus(boas.getGenus());
+      duplicateGenus.setQuantity(panthera.getQuantity());
+      Future<Boolean> written = writeBehind.update(moreBoas);
+      Future<Boolean> conflicting = writeBehind.update(duplicateGenus);
+      conflicting.setHandler(context.asyncAssertFailure(cause ->
+        written.setHandler(context.asyncAssertSuccess(updated -> {
+          context.assertTrue(updated);
+          async.complete();
+        }))
+      ));
+    });
+    async.awaitSuccess();
 
     RestAssured.given()
       .port(port)
-      .contentType(MediaType.APPLICATION_JSON)
       .header(TENANT_HEADER)
-      .pathParam("id", createdPet.getId())
+      .pathParam("id", boas.getId())
       .when()
       .get(PETS_PATH + "/{id}")
       .then()
       .statusCode(HttpStatus.SC_OK)
-      .body("id", is(createdPet.getId()));
-
+      .body("quantity", is(24));
   }
 
   @Test
-  public void shouldReturnNotFoundOnDeletePetByIdWhenPetDoesNotExist(final TestContext context) {
-    RestAssured.given()
+  public void shouldReadAndWritePetsThroughReactiveRepository(final TestContext context) {
+    Pet createdPet = RestAssured.given()
       .port(port)
       .contentType(MediaType.APPLICATION_JSON)
       .header(TENANT_HEADER)
-      .pathParam("id", "118dbd8c-5ba0-47a9-a850-34bbb1dbf3b7")
+      .body(PET2.toString())
       .when()
-      .delete(PETS_PATH + "/{id}")
-      .then()
-      .statusCode(HttpStatus.SC_NOT_FOUND);
+      .post(PETS_PATH)
+      .body().as(Pet.class);
+    PetRepository repository;
+    System.setProperty("pets.repository", PetRepository.REACTIVE);
+    try {
+      repository = PetRepository.forTenant(vertx, TENANT);
+    } finally {
+      System.clearProperty("pets.repository");
+    }
+    Pet update = new Pet();
+    update.setId(createdPet.getId());
+    update.setGenus(createdPet.getGenus());
+    update.setQuantity(51);
+
+    Async async = context.async();
+    vertx.runOnContext(v -> repository.findById(HOMELESS_PETS_TABLE_NAME, createdPet.getId())
+      .compose(found -> {
+        context.assertEquals(createdPet.getGenus(), found.getGenus());
+        return repository.update(HOMELESS_PETS_TABLE_NAME, update);
+      })
+      .compose(updated -> {
+        context.assertTrue(updated);
+        return repository.findById(HOMELESS_PETS_TABLE_NAME, createdPet.getId());
+      })
+      .compose(found -> {
+        context.assertEquals(51, found.getQuantity());
+        return repository.delete(HOMELESS_PETS_TABLE_NAME, createdPet.getId());
+      })
+      .compose(deleted -> {
+        context.assertTrue(deleted);
+        return repository.delete(HOMELESS_PETS_TABLE_NAME, "nonexistent_pet_id");
+      })
+      .compose(deleted -> {
+        context.assertFalse(deleted);
+        return repository.findById(HOMELESS_PETS_TABLE_NAME, createdPet.getId());
+      })
+      .compose(found -> {
+        context.assertNull(found);
+        return repository.findById(HOMELESS_PETS_TABLE_NAME, "nonexistent_pet_id");
+      })
+      .compose(found -> {
+        context.assertNull(found);
+        update.setId("nonexistent_pet_id");
+        return repository.update(HOMELESS_PETS_TABLE_NAME, update);
+      })
+      .setHandler(context.asyncAssertSuccess(updated -> {
+        context.assertFalse(updated);
+        async.complete();
+      })));
   }
 
   @Test
-  public void shouldDeletePetById(final TestContext context) {
+  public void shouldUpdatePetsWriteBehind(final TestContext context) {
+    System.setProperty("pets.writeBehind.enabled", "true");
+    try {
+      Pet createdPet = RestAssured.given()
+        .port(port)
+        .contentType(MediaType.APPLICATION_JSON)
+        .header(TENANT_HEADER)
+        .body(PET3.toString())
+        .when()
+        .post(PETS_PATH)
+        .body().as(Pet.class);
 
-    Response response = RestAssured.given()
+      RestAssured.given()
+        .port(port)
+        .contentType(MediaType.APPLICATION_JSON)
+        .header(TENANT_HEADER)
+        .pathParam("id", createdPet.getId())
+        .body(PET3.copy().put("id", createdPet.getId()).put("quantity", 21).toString())
+        .when()
+        .put(PETS_PATH + "/{id}")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+      RestAssured.given()
+        .port(port)
+        .contentType(MediaType.APPLICATION_JSON)
+        .header(TENANT_HEADER)
+        .pathParam("id", "nonexistent_pet_id")
+        .body(PET2.toString())
+        .when()
+        .put(PETS_PATH + "/{id}")
+        .then()
+        .statusCode(HttpStatus.SC_NOT_FOUND);
+
+      Async async = context.async();
+      PetWriteBehind writeBehind = TenantContext.forTenant(vertx, TENANT).getWriteBehind();
+      vertx.runOnContext(v -> {
+        long flushes = writeBehind.getFlushes();
+        long coalesced = writeBehind.getCoalesced();
+        Pet superseded = new Pet();
+        superseded.setId(createdPet.getId());
+        superseded.setGenus(createdPet.getGenus());
+        superseded.setQuantity(22);
+        Pet latest = new Pet();
+        latest.setId(createdPet.getId());
+        latest.setGenus(createdPet.getGenus());
+        latest.setQuantity(23);
+        Future<Boolean> first = writeBehind.update(superseded);
+        Future<Boolean> last = writeBehind.update(latest);
+        CompositeFuture.all(first, last).setHandler(context.asyncAssertSuccess(res -> {
+          context.assertTrue(first.result());
+          context.assertTrue(last.result());
+          context.assertEquals(flushes + 1, writeBehind.getFlushes());
+          context.assertEquals(coalesced + 1, writeBehind.getCoalesced());
+          async.complete();
+        }));
+      });
+      async.awaitSuccess();
+
+      RestAssured.given()
+        .port(port)
+        .header(TENANT_HEADER)
+        .pathParam("id", createdPet.getId())
+        .when()
+        .get(PETS_PATH + "/{id}")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("quantity", is(23));
+    } finally {
+      System.clearProperty("pets.writeBehind.enabled");
+    }
+  }
+
+  @Test
+  public void shouldAnswerNotModifiedForCurrentETag(final TestContext context) {
+    Pet createdPet = RestAssured.given()
       .port(port)
       .contentType(MediaType.APPLICATION_JSON)
       .header(TENANT_HEADER)
       .body(PET1.toString())
       .when()
-      .post(PETS_PATH);
-    Assert.assertThat(response.statusCode(), is(HttpStatus.SC_CREATED));
-    Pet createdPet = response.body().as(Pet.class);
+      .post(PETS_PATH)
+      .body().as(Pet.class);
 
-    RestAssured.given()
+    String etag = RestAssured.given()
       .port(port)
-      .contentType(MediaType.APPLICATION_JSON)
       .header(TENANT_HEADER)
       .pathParam("id", createdPet.getId())
       .when()
-      .delete(PETS_PATH + "/{id}")
+      .get(PETS_PATH + "/{id}")
       .then()
-      .statusCode(HttpStatus.SC_NO_CONTENT);
+      .statusCode(HttpStatus.SC_OK)
+      .header("ETag", notNullValue())
+      .extract().header("ETag");
 
     RestAssured.given()
       .port(port)
-      .contentType(MediaType.APPLICATION_JSON)
       .header(TENANT_HEADER)
+      .header("If-None-Match", etag)
       .pathParam("id", createdPet.getId())
       .when()
       .get(PETS_PATH + "/{id}")
       .then()
-      .statusCode(HttpStatus.SC_NOT_FOUND);
+      .statusCode(HttpStatus.SC_NOT_MODIFIED);
 
-  }
+    String collectionEtag = RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .when()
+      .get(PETS_PATH)
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .extract().header("ETag");
 
-  @Test
-  public void shouldReturnNotFoundOnAdoptPetByIdWhenPetDoesNotExist(final TestContext context) {
     RestAssured.given()
       .port(port)
-      .contentType(MediaType.APPLICATION_JSON)
       .header(TENANT_HEADER)
-      .pathParam("id", "118dbd8c-5ba0-47a9-a850-34bbb1dbf3b7")
+      .header("If-None-Match", collectionEtag)
       .when()
-      .post(PETS_PATH + "/adopt/{id}")
+      .get(PETS_PATH)
       .then()
-      .statusCode(HttpStatus.SC_NOT_FOUND);
+      .statusCode(HttpStatus.SC_NOT_MODIFIED);
   }
 
   @Test
-  public void shouldAdoptPetById(final TestContext context) {
-
-    Response createResponse = RestAssured.given()
+  public void shouldUpdatePetOnlyIfETagMatches(final TestContext context) {
+    Pet createdPet = RestAssured.given()
       .port(port)
       .contentType(MediaType.APPLICATION_JSON)
       .header(TENANT_HEADER)
-      .body(PET2.toString())
+      .body(PET1.toString())
+      .when()
+      .post(PETS_PATH)
+      .body().as(Pet.class);
+    String etag = RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .pathParam("id", createdPet.getId())
+      .when()
+      .get(PETS_PATH + "/{id}")
+      .then()
+      .extract().header("ETag");
+
+    // If-Match compares strongly, a weak tag never matches
+    RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .header("If-Match", "W/" + etag)
+      .pathParam("id", createdPet.getId())
+      .body(PET1.copy().put("id", createdPet.getId()).put("quantity", 31).toString())
+      .when()
+      .put(PETS_PATH + "/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_PRECONDITION_FAILED);
+
+    RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .header("If-Match", etag)
+      .pathParam("id", createdPet.getId())
+      .body(PET1.copy().put("id", createdPet.getId()).put("quantity", 31).toString())
+      .when()
+      .put(PETS_PATH + "/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .header("If-Match", etag)
+      .pathParam("id", createdPet.getId())
+      .body(PET1.copy().put("id", createdPet.getId()).put("quantity", 32).toString())
+      .when()
+      .put(PETS_PATH + "/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_PRECONDITION_FAILED);
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .pathParam("id", createdPet.getId())
+      .when()
+      .get(PETS_PATH + "/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .header("ETag", not(etag))
+      .body("quantity", is(31));
+  }
+
+  @Test
+  public void shouldReportPetChangesInCommitOrder(final TestContext context) {
+    long since = 0;
+    int read;
+    do {
+      Response page = RestAssured.given()
+        .port(port)
+        .header(TENANT_HEADER)
+        .queryParam("since", since)
+        .queryParam("limit", 1000)
+        .when()
+        .get("/pet-changes");
+      since = page.jsonPath().getLong("nextSince");
+      read = page.jsonPath().getInt("totalRecords");
+    } while (read > 0);
+
+    Pet createdPet = RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(PET1.toString())
+      .when()
+      .post(PETS_PATH)
+      .body().as(Pet.class);
+    RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .pathParam("id", createdPet.getId())
+      .body(PET1.copy().put("id", createdPet.getId()).put("quantity", 31).toString())
+      .when()
+      .put(PETS_PATH + "/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_NO_CONTENT);
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .pathParam("id", createdPet.getId())
+      .when()
+      .delete(PETS_PATH + "/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    long nextSince = RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("since", since)
+      .when()
+      .get("/pet-changes")
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("changes.operation", contains("create", "update", "delete"))
+      .body("changes.petId", contains(createdPet.getId(), createdPet.getId(), createdPet.getId()))
+      .body("changes[1].pet.quantity", is(31))
+      .body("changes[2].pet", nullValue())
+      .extract().jsonPath().getLong("nextSince");
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("since", nextSince)
+      .queryParam("wait", 1)
+      .when()
+      .get("/pet-changes")
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("changes", empty())
+      .body("nextSince", is((int) nextSince));
+
+    // every change has a position now, none is kept with a retention of 0 days
+    Async async = context.async();
+    TenantContext.forTenant(vertx, TENANT).getChangePruner().prune(0).setHandler(context.asyncAssertSuccess(deleted -> {
+      context.assertTrue(deleted >= 3);
+      RestAssured.given()
+        .port(port)
+        .header(TENANT_HEADER)
+        .when()
+        .get("/pet-changes")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("changes", empty());
+      async.complete();
+    }));
+  }
+
+  @Test
+  public void shouldReturnNotFoundOnGetPetByIdWhenPetDoesNotExist(final TestContext context) {
+    RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .pathParam("id", "nonexistent_pet_id")
+      .when()
+      .get(PETS_PATH + "/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_NOT_FOUND);
+  }
+
+  @Test
+  public void shouldReturnPetById(final TestContext context) {
+
+    Response response = RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(PET1.toString())
+      .when()
+      .post(PETS_PATH);
+    Assert.assertThat(response.statusCode(), is(HttpStatus.SC_CREATED));
+    Pet createdPet = response.body().as(Pet.class);
+
+    RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .pathParam("id", createdPet.getId())
+      .when()
+      .get(PETS_PATH + "/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("id", is(createdPet.getId()));
+
+  }
+
+  @Test
+  public void shouldReturnNotFoundOnDeletePetByIdWhenPetDoesNotExist(final TestContext context) {
+    RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .pathParam("id", "118dbd8c-5ba0-47a9-a850-34bbb1dbf3b7")
+      .when()
+      .delete(PETS_PATH + "/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_NOT_FOUND);
+  }
+
+  @Test
+  public void shouldDeletePetById(final TestContext context) {
+
+    Response response = RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(PET1.toString())
+      .when()
+      .post(PETS_PATH);
+    Assert.assertThat(response.statusCode(), is(HttpStatus.SC_CREATED));
+    Pet createdPet = response.body().as(Pet.class);
+
+    RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .pathParam("id", createdPet.getId())
+      .when()
+      .delete(PETS_PATH + "/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .pathParam("id", createdPet.getId())
+      .when()
+      .get(PETS_PATH + "/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_NOT_FOUND);
+
+  }
+
+  @Test
+  public void shouldReturnNotFoundOnAdoptPetByIdWhenPetDoesNotExist(final TestContext context) {
+    RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .pathParam("id", "118dbd8c-5ba0-47a9-a850-34bbb1dbf3b7")
+      .when()
+      .post(PETS_PATH + "/adopt/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_NOT_FOUND);
+  }
+
+  @Test
+  public void shouldAdoptPetById(final TestContext context) {
+
+    Response createResponse = RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(PET2.toString())
       .when()
       .post(PETS_PATH);
     Assert.assertThat(createResponse.statusCode(), is(HttpStatus.SC_CREATED));
@@ -386,4 +1039,890 @@ public class PetsImplTest {
       .then()
       .statusCode(HttpStatus.SC_OK);
   }
+
+  @Test
+  public void shouldAdoptPetByIdInSingleStatement(final TestContext context) {
+    System.setProperty("pets.adopt.singleStatement", "true");
+    try {
+      Response createResponse = RestAssured.given()
+        .port(port)
+        .contentType(MediaType.APPLICATION_JSON)
+        .header(TENANT_HEADER)
+        .body(PET3.toString())
+        .when()
+        .post(PETS_PATH);
+      Assert.assertThat(createResponse.statusCode(), is(HttpStatus.SC_CREATED));
+      Pet createdPet = createResponse.body().as(Pet.class);
+
+      Response adoptResponse = RestAssured.given()
+        .port(port)
+        .contentType(MediaType.APPLICATION_JSON)
+        .header(TENANT_HEADER)
+        .pathParam("id", createdPet.getId())
+        .when()
+        .post(PETS_PATH + "/adopt/{id}");
+      Assert.assertThat(adoptResponse.statusCode(), is(HttpStatus.SC_CREATED));
+      Pet adoptedPet = adoptResponse.body().as(Pet.class);
+      Assert.assertThat(adoptedPet.getGenus(), is(createdPet.getGenus()));
+      Assert.assertThat(adoptedPet.getQuantity(), is(createdPet.getQuantity()));
+
+      RestAssured.given()
+        .port(port)
+        .contentType(MediaType.APPLICATION_JSON)
+        .header(TENANT_HEADER)
+        .pathParam("id", createdPet.getId())
+        .when()
+        .post(PETS_PATH + "/adopt/{id}")
+        .then()
+        .statusCode(HttpStatus.SC_NOT_FOUND);
+
+      RestAssured.given()
+        .port(port)
+        .contentType(MediaType.APPLICATION_JSON)
+        .header(TENANT_HEADER)
+        .pathParam("id", adoptedPet.getId())
+        .when()
+        .get(PETS_PATH + "/adopt/{id}")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("genus", is(createdPet.getGenus()));
+    } finally {
+      System.clearProperty("pets.adopt.singleStatement");
+    }
+  }
+
+  @Test
+  public void shouldAnswerAdoptionOfAdoptedGenusWith422(final TestContext context) {
+    // the transaction chain adopts a boa, the single statement a cat
+    for (JsonObject pet : Arrays.asList(PET3, PET1)) {
+      System.setProperty("pets.adopt.singleStatement", String.valueOf(pet == PET1));
+      try {
+        adopt(pet);
+        // the genus is adopted already
+        Pet homeless = RestAssured.given()
+          .port(port)
+          .contentType(MediaType.APPLICATION_JSON)
+          .header(TENANT_HEADER)
+          .body(pet.toString())
+          .when()
+          .post(PETS_PATH)
+          .body().as(Pet.class);
+        RestAssured.given()
+          .port(port)
+          .header(TENANT_HEADER)
+          .pathParam("id", homeless.getId())
+          .when()
+          .post(PETS_PATH + "/adopt/{id}")
+          .then()
+          .statusCode(422)
+          .body(containsString(homeless.getId()));
+
+        RestAssured.given()
+          .port(port)
+          .header(TENANT_HEADER)
+          .pathParam("id", homeless.getId())
+          .when()
+          .get(PETS_PATH + "/{id}")
+          .then()
+          .statusCode(HttpStatus.SC_OK);
+      } finally {
+        System.clearProperty("pets.adopt.singleStatement");
+      }
+    }
+  }
+
+  @Test
+  public void shouldAdoptPetsInBulkAndReportNotFound(final TestContext context) {
+    Pet canis = RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(PET1.toString())
+      .when()
+      .post(PETS_PATH)
+      .body().as(Pet.class);
+    Pet panthera = RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(PET2.toString())
+      .when()
+      .post(PETS_PATH)
+      .body().as(Pet.class);
+    Pet adoptedBoas = RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(PET3.toString())
+      .when()
+      .post(PETS_PATH)
+      .body().as(Pet.class);
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .pathParam("id", adoptedBoas.getId())
+      .when()
+      .post(PETS_PATH + "/adopt/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_CREATED);
+    // the genus is adopted already
+    Pet boas = RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(PET3.toString())
+      .when()
+      .post(PETS_PATH)
+      .body().as(Pet.class);
+    String unknownId = "6b4ae089-e1ee-431f-af83-e1133f8e3da0";
+    JsonObject ids = new JsonObject().put("ids", new JsonArray()
+      .add(canis.getId()).add(panthera.getId()).add(boas.getId()).add(unknownId).add("not_a_uuid"));
+
+    RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(ids.toString())
+      .when()
+      .post(PETS_PATH + "/adopt")
+      .then()
+      .statusCode(HttpStatus.SC_CREATED)
+      .body("totalRecords", is(2))
+      .body("adopted*.genus", containsInAnyOrder(canis.getGenus(), panthera.getGenus()))
+      .body("conflicts", contains(boas.getId()))
+      .body("notFound", contains(unknownId, "not_a_uuid"));
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .when()
+      .get(PETS_PATH)
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("totalRecords", is(1))
+      .body("pets[0].id", is(boas.getId()));
+  }
+
+  @Test
+  public void shouldLoadConcurrentLookupsInOneBatch(final TestContext context) {
+    Pet canis = RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(PET1.toString())
+      .when()
+      .post(PETS_PATH)
+      .body().as(Pet.class);
+    Pet panthera = RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(PET2.toString())
+      .when()
+      .post(PETS_PATH)
+      .body().as(Pet.class);
+
+    Async async = context.async();
+    PetLoader loader = PetLoader.forTenant(vertx, TENANT);
+    vertx.runOnContext(v -> {
+      long batches = loader.getBatches();
+      long coalesced = loader.getCoalesced();
+      Future<Pet> first = loader.load(HOMELESS_PETS_TABLE_NAME, canis.getId());
+      Future<Pet> second = loader.load(HOMELESS_PETS_TABLE_NAME, panthera.getId());
+      Future<Pet> duplicate = loader.load(HOMELESS_PETS_TABLE_NAME, canis.getId());
+      Future<Pet> missing = loader.load(HOMELESS_PETS_TABLE_NAME, "nonexistent_pet_id");
+      CompositeFuture.all(first, second, duplicate, missing).setHandler(context.asyncAssertSuccess(res -> {
+        context.assertEquals(canis.getGenus(), first.result().getGenus());
+        context.assertEquals(panthera.getGenus(), second.result().getGenus());
+        context.assertEquals(canis.getGenus(), duplicate.result().getGenus());
+        context.assertTrue(first.result() != duplicate.result());
+        context.assertNull(missing.result());
+        context.assertEquals(batches + 1, loader.getBatches());
+        context.assertEquals(coalesced + 1, loader.getCoalesced());
+        async.complete();
+      }));
+    });
+  }
+
+  @Test
+  public void shouldServeCachedPetUntilItChanges(final TestContext context) {
+    Response createResponse = RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(PET1.toString())
+      .when()
+      .post(PETS_PATH);
+    Assert.assertThat(createResponse.statusCode(), is(HttpStatus.SC_CREATED));
+    Pet createdPet = createResponse.body().as(Pet.class);
+
+    long hitsBefore = PetCache.forTenant(TENANT).getHits();
+    for (int i = 0; i < 2; i++) {
+      RestAssured.given()
+        .port(port)
+        .header(TENANT_HEADER)
+        .pathParam("id", createdPet.getId())
+        .when()
+        .get(PETS_PATH + "/{id}")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("quantity", is(PET1.getInteger("quantity")));
+    }
+    Assert.assertThat(PetCache.forTenant(TENANT).getHits(), greaterThan(hitsBefore));
+
+    RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .pathParam("id", createdPet.getId())
+      .body(PET1.copy().put("quantity", 31).toString())
+      .when()
+      .put(PETS_PATH + "/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .pathParam("id", createdPet.getId())
+      .when()
+      .get(PETS_PATH + "/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("quantity", is(31));
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .pathParam("id", createdPet.getId())
+      .when()
+      .post(PETS_PATH + "/adopt/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_CREATED);
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .pathParam("id", createdPet.getId())
+      .when()
+      .get(PETS_PATH + "/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_NOT_FOUND);
+  }
+
+  @Test
+  public void shouldEvictCachedPetWhenAnotherInstanceNotifies(final TestContext context) throws Exception {
+    Response createResponse = RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(PET2.toString())
+      .when()
+      .post(PETS_PATH);
+    Assert.assertThat(createResponse.statusCode(), is(HttpStatus.SC_CREATED));
+    Pet createdPet = createResponse.body().as(Pet.class);
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .pathParam("id", createdPet.getId())
+      .when()
+      .get(PETS_PATH + "/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("quantity", is(PET2.getInteger("quantity")));
+
+    String table = PostgresClient.convertToPsqlStandard(TENANT) + "." + HOMELESS_PETS_TABLE_NAME;
+    String payload = new JsonObject()
+      .put("origin", "another-instance")
+      .put("tenant", TENANT)
+      .put("table", HOMELESS_PETS_TABLE_NAME)
+      .put("id", createdPet.getId())
+      .encode();
+    executeSql("UPDATE " + table + " SET jsonb = jsonb_set(jsonb, '{quantity}', '99') WHERE _id = '" + createdPet.getId() + "'");
+    executeSql("SELECT pg_notify('" + PetInvalidationBus.CHANNEL + "', '" + payload + "')");
+
+    int quantity = 0;
+    for (int attempt = 0; attempt < 50 && quantity != 99; attempt++) {
+      Thread.sleep(100);
+      quantity = RestAssured.given()
+        .port(port)
+        .header(TENANT_HEADER)
+        .pathParam("id", createdPet.getId())
+        .when()
+        .get(PETS_PATH + "/{id}")
+        .jsonPath()
+        .getInt("quantity");
+    }
+    Assert.assertThat(quantity, is(99));
+  }
+
+  @Test
+  public void shouldPublishInvalidationsOnlyForChangedPets(final TestContext context) throws Exception {
+    JsonObject config = PostgresClient.getInstance(vertx).getConnectionConfig();
+    String url = "jdbc:postgresql://" + config.getString("host") + ":" + config.getInteger("port") + "/" + config.getString("database");
+    try (Connection connection = DriverManager.getConnection(url, config.getString("username"), config.getString("password"))) {
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("LISTEN " + PetInvalidationBus.CHANNEL);
+      }
+      Pet createdPet = RestAssured.given()
+        .port(port)
+        .contentType(MediaType.APPLICATION_JSON)
+        .header(TENANT_HEADER)
+        .body(PET1.toString())
+        .when()
+        .post(PETS_PATH)
+        .body().as(Pet.class);
+      String missingId = UUID.randomUUID().toString();
+      RestAssured.given()
+        .port(port)
+        .contentType(MediaType.APPLICATION_JSON)
+        .header(TENANT_HEADER)
+        .pathParam("id", missingId)
+        .body(PET2.toString())
+        .when()
+        .put(PETS_PATH + "/{id}")
+        .then()
+        .statusCode(HttpStatus.SC_NOT_FOUND);
+      RestAssured.given()
+        .port(port)
+        .header(TENANT_HEADER)
+        .pathParam("id", missingId)
+        .when()
+        .delete(PETS_PATH + "/{id}")
+        .then()
+        .statusCode(HttpStatus.SC_NOT_FOUND);
+      RestAssured.given()
+        .port(port)
+        .header(TENANT_HEADER)
+        .pathParam("id", createdPet.getId())
+        .when()
+        .delete(PETS_PATH + "/{id}")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+      List<String> invalidated = new ArrayList<>();
+      PGConnection pgConnection = connection.unwrap(PGConnection.class);
+      for (int attempt = 0; attempt < 20 && invalidated.isEmpty(); attempt++) {
+        PGNotification[] notifications = pgConnection.getNotifications(100);
+        if (notifications != null) {
+          for (PGNotification notification : notifications) {
+            invalidated.add(new JsonObject(notification.getParameter()).getString("id"));
+          }
+        }
+      }
+      Assert.assertThat(invalidated, contains(createdPet.getId()));
+    }
+  }
+
+  @Test
+  public void shouldExposeLatencyMetrics(final TestContext context) {
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .when()
+      .get(PETS_PATH)
+      .then()
+      .statusCode(HttpStatus.SC_OK);
+    // series of another tenant
+    ConcurrencyLimiter.forTenant(LIMITER_TENANT);
+    LatencyMetrics.forTenant(LIMITER_TENANT).record("runGetQuery", 1000);
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .when()
+      .get("/pet-admin/metrics")
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body(containsString("pets_request_duration_seconds_count{endpoint=\"getPets\",tenant=\"" + TENANT + "\"}"))
+      .body(containsString("pets_stage_duration_seconds_count{stage=\"runGetQuery\",tenant=\"" + TENANT + "\"}"))
+      .body(containsString("pets_requests_total{endpoint=\"getPets\",tenant=\"" + TENANT + "\",status=\"2xx\"}"))
+      .body(containsString("pets_limiter_concurrency{tenant=\"" + TENANT + "\",state=\"limit\"}"))
+      .body(not(containsString("tenant=\"" + LIMITER_TENANT + "\"")));
+  }
+
+  @Test
+  public void shouldAnswerNotesSearchFromIndex(final TestContext context) {
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("query", "notes=purrs")
+      .when()
+      .get("/pet-admin/query-plan")
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("indexUsable", is(true))
+      .body("indexUsed", notNullValue())
+      .body("sequentialScans", empty())
+      .body("indexes", hasItem(containsString("notes")));
+  }
+
+  @Test
+  public void shouldAnswerQuantityRangeFromNumericIndex(final TestContext context) {
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("query", "quantity>25")
+      .when()
+      .get("/pet-admin/query-plan")
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("indexUsable", is(true))
+      .body("indexes", contains("homeless_pets_quantity_numeric_idx"));
+  }
+
+  @Test
+  public void shouldReturnBadRequestForInvalidQueryPlanQuery(final TestContext context) {
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("query", "notes=\"unterminated")
+      .when()
+      .get("/pet-admin/query-plan")
+      .then()
+      .statusCode(HttpStatus.SC_BAD_REQUEST);
+  }
+
+  @Test
+  public void shouldShedRequestsBeyondLimitAndQueue(final TestContext context) {
+    ConcurrencyLimiter limiter = ConcurrencyLimiter.forTenant(LIMITER_TENANT);
+    Async queueFull = context.async();
+    Async queueTimeout = context.async(limiter.getMaxQueue());
+    vertx.runOnContext(v -> {
+      Context vertxContext = vertx.getOrCreateContext();
+      int limit = limiter.getLimit();
+      for (int i = 0; i < limit; i++) {
+        // admitted tasks never answer, so their slots stay taken and the rest waits in the queue
+        limiter.execute(vertxContext, res -> context.fail("admitted request must not be answered"), handler -> { });
+      }
+      for (int i = 0; i < limiter.getMaxQueue(); i++) {
+        limiter.execute(vertxContext, res -> {
+          context.assertEquals(javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), res.result().getStatus());
+          queueTimeout.countDown();
+        }, handler -> context.fail("queued request must not run while no slot is free"));
+      }
+      limiter.execute(vertxContext, res -> {
+        context.assertEquals(javax.ws.rs.core.Response.Status.TOO_MANY_REQUESTS.getStatusCode(), res.result().getStatus());
+        context.assertNotNull(res.result().getHeaderString("Retry-After"));
+        context.assertEquals(1L, limiter.getShedQueueFull());
+        queueFull.complete();
+      }, handler -> context.fail("request beyond capacity must be shed"));
+    });
+  }
+
+  @Test
+  public void shouldAnswerAndReleaseSlotWhenTaskThrows(final TestContext context) {
+    ConcurrencyLimiter limiter = ConcurrencyLimiter.forTenant(LIMITER_TENANT);
+    Async async = context.async();
+    vertx.runOnContext(v -> limiter.execute(vertx.getOrCreateContext(), res -> {
+      context.assertEquals(javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), res.result().getStatus());
+      context.assertEquals(0, limiter.getInFlight());
+      async.complete();
+    }, handler -> {
+      throw new IllegalStateException("task failure");
+    }));
+  }
+
+  @Test
+  public void shouldRouteReadsToReplicaAndFollowOwnWrites(final TestContext context) throws Exception {
+    String tenant = "replica_test";
+    Header tenantHeader = new Header(RestVerticle.OKAPI_HEADER_TENANT, tenant);
+    EmbeddedPostgres replica = new EmbeddedPostgres(Version.Main.V10);
+    int replicaPort = NetworkUtils.nextFreePort();
+    String replicaUrl = replica.start("localhost", replicaPort, "replica", "replica", "replica");
+    try {
+      // stand-in replica: only the tables, with a pet the primary does not have
+      String schema = PostgresClient.convertToPsqlStandard(tenant);
+      String replicaPetId = UUID.randomUUID().toString();
+      try (Connection connection = DriverManager.getConnection(replicaUrl); Statement statement = connection.createStatement()) {
+        statement.execute("CREATE SCHEMA " + schema);
+        statement.execute("CREATE TABLE " + schema + "." + HOMELESS_PETS_TABLE_NAME + " (_id uuid PRIMARY KEY, jsonb jsonb NOT NULL)");
+        statement.execute("CREATE TABLE " + schema + "." + ADOPTED_PETS_TABLE_NAME + " (_id uuid PRIMARY KEY, jsonb jsonb NOT NULL)");
+        statement.execute("INSERT INTO " + schema + "." + HOMELESS_PETS_TABLE_NAME + " VALUES ('" + replicaPetId + "', '"
+          + new JsonObject().put("id", replicaPetId).put("genus", "Replica").put("quantity", 1).encode() + "')");
+      }
+
+      CompletableFuture<Void> tenantCreated = new CompletableFuture<>();
+      new TenantClient("localhost", port, tenant, tenant).postTenant(null, res -> tenantCreated.complete(null));
+      tenantCreated.get(60, TimeUnit.SECONDS);
+      System.setProperty("pets.replica.host", "localhost");
+      System.setProperty("pets.replica.port", String.valueOf(replicaPort));
+      System.setProperty("pets.replica.database", "replica");
+      System.setProperty("pets.replica.username", "replica");
+      System.setProperty("pets.replica.password", "replica");
+      System.setProperty("pets.replica.lagCheckMillis", "100");
+      ReplicaRouter router;
+      try {
+        router = TenantContext.forTenant(vertx, tenant).getReplicaRouter();
+      } finally {
+        Arrays.asList("host", "port", "database", "username", "password", "lagCheckMillis")
+          .forEach(setting -> System.clearProperty("pets.replica." + setting));
+      }
+      // the first read starts the lag checks, reads go to the primary until one succeeds
+      router.reader(Collections.emptyMap());
+      for (int attempt = 0; attempt < 50 && router.getLagMillis() != 0; attempt++) {
+        Thread.sleep(100);
+      }
+
+      RestAssured.given()
+        .port(port)
+        .header(tenantHeader)
+        .when()
+        .get(PETS_PATH)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("totalRecords", is(1))
+        .body("pets[0].id", is(replicaPetId));
+
+      Pet createdPet = RestAssured.given()
+        .port(port)
+        .contentType(MediaType.APPLICATION_JSON)
+        .header(tenantHeader)
+        .header("X-Okapi-User-Id", "writer")
+        .body(PET1.toString())
+        .when()
+        .post(PETS_PATH)
+        .body().as(Pet.class);
+      RestAssured.given()
+        .port(port)
+        .header(tenantHeader)
+        .header("X-Okapi-User-Id", "reader")
+        .pathParam("id", createdPet.getId())
+        .when()
+        .get(PETS_PATH + "/{id}")
+        .then()
+        .statusCode(HttpStatus.SC_NOT_FOUND);
+      RestAssured.given()
+        .port(port)
+        .header(tenantHeader)
+        .header("X-Okapi-User-Id", "writer")
+        .pathParam("id", createdPet.getId())
+        .when()
+        .get(PETS_PATH + "/{id}")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("genus", is(PET1.getString("genus")));
+      context.assertTrue(router.getReplicaReads() > 0);
+    } finally {
+      replica.stop();
+    }
+  }
+
+  @Test
+  public void shouldMaintainPetInventoryAndRebuildIt(final TestContext context) throws Exception {
+    Pet canis = RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(PET1.toString())
+      .when()
+      .post(PETS_PATH)
+      .body().as(Pet.class);
+    Pet panthera = RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(PET2.toString())
+      .when()
+      .post(PETS_PATH)
+      .body().as(Pet.class);
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .when()
+      .get("/pet-inventory")
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("genera.genus", contains("canis", "panthera"))
+      .body("genera.pets", contains(1, 1))
+      .body("genera.quantity", contains(30, 50))
+      .body("totalQuantity", is(80));
+
+    RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .pathParam("id", canis.getId())
+      // a genus spelled in other case is the same genus
+      .body(PET1.copy().put("id", canis.getId()).put("genus", "CANIS").put("quantity", 31).toString())
+      .when()
+      .put(PETS_PATH + "/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_NO_CONTENT);
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .pathParam("id", panthera.getId())
+      .when()
+      .delete(PETS_PATH + "/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .when()
+      .get("/pet-inventory")
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("genera.genus", contains("canis"))
+      .body("genera.quantity", contains(31))
+      .body("totalPets", is(1));
+
+    executeSql("UPDATE " + PostgresClient.convertToPsqlStandard(TENANT) + ".pet_inventory SET quantity = 0");
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .when()
+      .post("/pet-inventory/rebuild")
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("genera.genus", contains("canis"))
+      .body("genera.quantity", contains(31))
+      .body("totalQuantity", is(31));
+  }
+
+  @Test
+  public void shouldExportPetsAsNdjsonAndCsv(final TestContext context) {
+    Pet canis = RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(PET1.toString())
+      .when()
+      .post(PETS_PATH)
+      .body().as(Pet.class);
+    RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(PET2.copy().put("notes", "says \"hi\", then leaves").toString())
+      .when()
+      .post(PETS_PATH)
+      .then()
+      .statusCode(HttpStatus.SC_CREATED);
+
+    String ndjson = RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .when()
+      .get("/pet-export")
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .contentType("application/x-ndjson")
+      .extract().asString();
+    List<String> genera = new ArrayList<>();
+    for (String line : ndjson.split("\n")) {
+      JsonObject pet = new JsonObject(line);
+      genera.add(pet.getString("genus"));
+      if ("Panthera".equals(pet.getString("genus"))) {
+        context.assertEquals("says \"hi\", then leaves", pet.getString("notes"));
+      }
+    }
+    Assert.assertThat(genera, containsInAnyOrder("Canis", "Panthera"));
+
+    String csv = RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("format", "csv")
+      .queryParam("query", "genus=Canis")
+      .when()
+      .get("/pet-export")
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .contentType("text/csv")
+      .extract().asString();
+    context.assertEquals("id,genus,quantity,notes\n" + canis.getId() + ",Canis,30,\n", csv);
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("table", "stray")
+      .when()
+      .get("/pet-export")
+      .then()
+      .statusCode(HttpStatus.SC_BAD_REQUEST);
+  }
+
+  @Test
+  public void shouldRejectExportsAboveTheLimit(final TestContext context) {
+    JsonArray pets = new JsonArray();
+    for (int i = 0; i < 100; i++) {
+      pets.add(new JsonObject().put("genus", "Export-" + i).put("quantity", i).put("notes", "too many for one export"));
+    }
+    RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(new JsonObject().put("pets", pets).put("totalRecords", pets.size()).toString())
+      .when()
+      .post(PETS_PATH + "/batch")
+      .then()
+      .statusCode(HttpStatus.SC_CREATED);
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .when()
+      .get("/pet-export")
+      .then()
+      .statusCode(HttpStatus.SC_REQUEST_TOO_LONG);
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("query", "quantity<5")
+      .when()
+      .get("/pet-export")
+      .then()
+      .statusCode(HttpStatus.SC_OK);
+  }
+
+  @Test
+  public void shouldArchiveAdoptionsMadeThroughTheApi(final TestContext context) {
+    String adoptedId = adopt(PET1);
+    System.setProperty("pets.adopt.singleStatement", "true");
+    String adoptedInSingleStatementId;
+    try {
+      adoptedInSingleStatementId = adopt(PET2);
+    } finally {
+      System.clearProperty("pets.adopt.singleStatement");
+    }
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("afterDays", 0)
+      .when()
+      .post("/pet-admin/archive")
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("archived", is(2));
+
+    for (String id : Arrays.asList(adoptedId, adoptedInSingleStatementId)) {
+      RestAssured.given()
+        .port(port)
+        .header(TENANT_HEADER)
+        .pathParam("id", id)
+        .when()
+        .get(PETS_PATH + "/adopt/{id}")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("metadata.createdDate", notNullValue());
+    }
+
+    // archived genera stay adopted
+    for (JsonObject pet : Arrays.asList(PET1, PET2)) {
+      System.setProperty("pets.adopt.singleStatement", String.valueOf(pet == PET2));
+      try {
+        Pet homeless = RestAssured.given()
+          .port(port)
+          .contentType(MediaType.APPLICATION_JSON)
+          .header(TENANT_HEADER)
+          .body(pet.toString())
+          .when()
+          .post(PETS_PATH)
+          .body().as(Pet.class);
+        RestAssured.given()
+          .port(port)
+          .header(TENANT_HEADER)
+          .pathParam("id", homeless.getId())
+          .when()
+          .post(PETS_PATH + "/adopt/{id}")
+          .then()
+          .statusCode(422);
+      } finally {
+        System.clearProperty("pets.adopt.singleStatement");
+      }
+    }
+  }
+
+  @Test
+  public void shouldArchiveOldAdoptionsAndDetachExpiredPartitions(final TestContext context) throws Exception {
+    String adoptedId = adopt(PET1);
+    YearMonth adopted = YearMonth.now(ZoneOffset.UTC).minusMonths(13);
+    executeSql("UPDATE " + PostgresClient.convertToPsqlStandard(TENANT) + "." + ADOPTED_PETS_TABLE_NAME
+      + " SET adopted_at = '" + adopted + "-15T12:00:00Z' WHERE jsonb->>'id' = '" + adoptedId + "'");
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("afterDays", 30)
+      .when()
+      .post("/pet-admin/archive")
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("archived", is(1))
+      .body("detached", empty());
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .pathParam("id", adoptedId)
+      .when()
+      .get(PETS_PATH + "/adopt/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("genus", is(PET1.getString("genus")));
+
+    String partition = "adopted_pets_archive_p" + adopted.format(DateTimeFormatter.ofPattern("yyyyMM"));
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .queryParam("afterDays", 30)
+      .queryParam("retentionMonths", 6)
+      .when()
+      .post("/pet-admin/archive")
+      .then()
+      .statusCode(HttpStatus.SC_OK)
+      .body("archived", is(0))
+      .body("detached", hasItem(partition));
+
+    RestAssured.given()
+      .port(port)
+      .header(TENANT_HEADER)
+      .pathParam("id", adoptedId)
+      .when()
+      .get(PETS_PATH + "/adopt/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_NOT_FOUND);
+  }
+
+  /**
+   * @return - id of the adopted pet, which differs from the id of the homeless pet
+   */
+  private String adopt(JsonObject pet) {
+    Pet createdPet = RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .body(pet.toString())
+      .when()
+      .post(PETS_PATH)
+      .body().as(Pet.class);
+    return RestAssured.given()
+      .port(port)
+      .contentType(MediaType.APPLICATION_JSON)
+      .header(TENANT_HEADER)
+      .pathParam("id", createdPet.getId())
+      .when()
+      .post(PETS_PATH + "/adopt/{id}")
+      .then()
+      .statusCode(HttpStatus.SC_CREATED)
+      .extract().body().as(Pet.class).getId();
+  }
+
+  private void executeSql(String sql) throws Exception {
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    PostgresClient.getInstance(vertx, TENANT).select(sql, reply -> {
+      if (reply.succeeded()) {
+        done.complete(null);
+      } else {
+        done.completeExceptionally(reply.cause());
+      }
+    });
+    done.get(10, TimeUnit.SECONDS);
+  }
 }